@@ -0,0 +1,35 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import diff.ConflictDetector;
+
+/**
+ * ConflictDetector.detectConflicts の計測（差分は事前に計算しておく）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConflictBenchmark {
+
+    private final ConflictDetector conflictDetector = new ConflictDetector();
+
+    @Benchmark
+    public int detectConflicts(DiagramFixture fixture, Blackhole blackhole) {
+        return conflictDetector.detectConflicts(fixture.diffsA, fixture.diffsB, blackhole::consume);
+    }
+}
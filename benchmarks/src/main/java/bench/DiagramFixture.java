@@ -0,0 +1,77 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import diff.Diff;
+import diff.DiffEngine;
+import matching.Matcher;
+import model.UmlClass;
+import model.UmlDiagram;
+import parser.DiagramParser;
+
+/**
+ * 各ベンチマークが共有する入力データ。
+ * 指定したクラス数のファイルを一時ディレクトリに生成し、後段のベンチマーク用に
+ * 解析結果・マッチング結果・差分を事前に計算しておく。
+ */
+@State(Scope.Benchmark)
+public class DiagramFixture {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int classes;
+
+    @Param({"42"})
+    public long seed;
+
+    public DiagramGenerator.GeneratedFiles files;
+    public UmlDiagram base;
+    public UmlDiagram versionA;
+    public UmlDiagram versionB;
+    public Map<UmlClass, UmlClass> matchesA;
+    public Map<UmlClass, UmlClass> matchesB;
+    public List<Diff> diffsA;
+    public List<Diff> diffsB;
+
+    private Path directory;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("classdiagram-bench");
+        files = new DiagramGenerator(classes, seed).writeTo(directory);
+
+        DiagramParser parser = new DiagramParser();
+        base = parser.parse(files.base);
+        versionA = parser.parse(files.versionA);
+        versionB = parser.parse(files.versionB);
+
+        Matcher matcher = new Matcher();
+        matchesA = matcher.match(base, versionA);
+        matchesB = matcher.match(base, versionB);
+
+        DiffEngine diffEngine = new DiffEngine();
+        diffsA = diffEngine.diff(base, versionA, matchesA);
+        diffsB = diffEngine.diff(base, versionB, matchesB);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package bench;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * ベンチマーク用に、既存の形式（{@code <id>]Class$(x,y)!名前!!-属性%!;}）のクラス図を生成するジェネレータ。
+ *
+ * base と、それを元に独立に編集した versionA / versionB の3ファイルを作る（N者間マージ用に versionC 以降も作れる）。編集内容は
+ * 座標の微小なずれ、クラス名の変更、属性の追加・削除・変更、クラスと関係の追加・削除、関係の種類の変更。
+ * 同じクラス数とシードからは常に同じファイルが生成される。
+ *
+ * 使い方: {@code java bench.DiagramGenerator <クラス数> <シード> <出力ディレクトリ> [<バージョン数>]}
+ */
+public final class DiagramGenerator {
+
+    // 編集の割合（クラス数・関係数に対する比率）
+    private static final double RENAME_RATE = 0.05;
+    private static final double ATTRIBUTE_EDIT_RATE = 0.10;
+    private static final double CLASS_DELETE_RATE = 0.02;
+    private static final double CLASS_ADD_RATE = 0.03;
+    private static final double RELATION_RETYPE_RATE = 0.03;
+    private static final double RELATION_DELETE_RATE = 0.02;
+    private static final double RELATION_ADD_RATE = 0.03;
+    private static final int JITTER = 15;
+
+    // レイアウトの間隔（Matcherの座標の閾値より少し狭くし、近くに複数の候補ができるようにする）
+    private static final int SPACING_X = 200;
+    private static final int SPACING_Y = 150;
+
+    private static final String[] NOUNS = {
+        "自動車", "エンジン", "タイヤ", "ホイール", "製造工場", "部品", "在庫", "注文", "顧客", "請求書",
+        "出荷", "倉庫", "仕入先", "製品", "価格", "契約", "社員", "部署", "会議", "予約",
+        "Account", "Order", "Invoice", "Customer", "Product", "Shipment", "Payment", "Supplier", "Warehouse", "Contract"
+    };
+    private static final String[] QUALIFIERS = {
+        "", "新", "旧", "仮", "標準", "国内", "海外", "管理", "基本", "特別",
+        "Base", "Default", "Abstract", "Local", "Remote", "Primary", "Pending", "Archived", "Shared", "Custom"
+    };
+    private static final String[] ATTRIBUTES = {
+        "モデルID", "搭載数", "装着数", "名前", "識別番号", "数量", "単価", "作成日", "更新日", "状態",
+        "住所", "電話番号", "メール", "備考", "担当者", "期限", "金額", "税率", "通貨", "重量",
+        "id", "name", "createdAt", "updatedAt", "status", "amount", "quantity", "price", "owner", "version"
+    };
+    private static final String[] RELATION_TYPES = {
+        "SimpleRelation", "Generalization", "Aggregation", "Composition"
+    };
+
+    private final int classCount;
+    private final long seed;
+
+    /**
+     * @param classCount baseダイアグラムのクラス数
+     * @param seed 乱数のシード
+     */
+    public DiagramGenerator(int classCount, long seed) {
+        if (classCount < 1) {
+            throw new IllegalArgumentException("classCount must be positive: " + classCount);
+        }
+        this.classCount = classCount;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 3 && args.length != 4) {
+            System.err.println("使い方: java bench.DiagramGenerator <クラス数> <シード> <出力ディレクトリ> [<バージョン数>]");
+            return;
+        }
+        Path directory = Paths.get(args[2]);
+        Files.createDirectories(directory);
+        int versionCount = args.length == 4 ? Integer.parseInt(args[3]) : 2;
+        GeneratedFiles files = new DiagramGenerator(Integer.parseInt(args[0]), Long.parseLong(args[1]))
+            .writeTo(directory, versionCount);
+        System.out.println("Generated " + files.base + " and " + files.versions);
+    }
+
+    /**
+     * 生成したファイルのパス。
+     */
+    public static final class GeneratedFiles {
+        public final Path base;
+        public final Path versionA;
+        public final Path versionB;
+        public final List<Path> versions; // versionA, versionB, versionC, ... の順
+
+        GeneratedFiles(Path base, List<Path> versions) {
+            this.base = base;
+            this.versionA = versions.get(0);
+            this.versionB = versions.get(1);
+            this.versions = List.copyOf(versions);
+        }
+    }
+
+    /**
+     * base.txt, versionA.txt, versionB.txt を指定したディレクトリに書き出します。
+     * @param directory 出力先（存在していること）
+     * @return 書き出したファイルのパス
+     */
+    public GeneratedFiles writeTo(Path directory) throws IOException {
+        return writeTo(directory, 2);
+    }
+
+    /**
+     * base.txt と、versionA.txt から始まる versionCount 個のバージョンを指定したディレクトリに書き出します。
+     * バージョンの名前は A から Z までの1文字で、i 番目のバージョンはバージョン数に関係なく同じ内容になる。
+     * @param directory 出力先（存在していること）
+     * @param versionCount バージョンの数（2以上26以下）
+     * @return 書き出したファイルのパス
+     */
+    public GeneratedFiles writeTo(Path directory, int versionCount) throws IOException {
+        if (versionCount < 2 || versionCount > 26) {
+            throw new IllegalArgumentException("versionCount must be between 2 and 26: " + versionCount);
+        }
+        Diagram base = generateBase(new Random(seed));
+        Path basePath = directory.resolve("base.txt");
+        base.write(basePath);
+        List<Path> versionPaths = new ArrayList<>(versionCount);
+        for (int i = 0; i < versionCount; i++) {
+            Path versionPath = directory.resolve("version" + (char) ('A' + i) + ".txt");
+            edit(base, new Random(seed * 31 + i + 1)).write(versionPath);
+            versionPaths.add(versionPath);
+        }
+        return new GeneratedFiles(basePath, versionPaths);
+    }
+
+    private Diagram generateBase(Random random) {
+        Diagram diagram = new Diagram();
+        int columns = (int) Math.ceil(Math.sqrt(classCount));
+        for (int i = 0; i < classCount; i++) {
+            int x = 100 + (i % columns) * SPACING_X;
+            int y = 100 + (i / columns) * SPACING_Y;
+            diagram.classes.add(new GeneratedClass(diagram.nextId++, uniqueName(i), x, y, randomAttributes(random)));
+        }
+        // 各クラスから、配置の近いクラスへ1〜2本の関係を張る
+        for (int i = 1; i < classCount; i++) {
+            int links = 1 + random.nextInt(2);
+            for (int k = 0; k < links; k++) {
+                int target = Math.max(0, i - 1 - random.nextInt(Math.min(i, columns + 1)));
+                diagram.relations.add(new GeneratedRelation(diagram.nextId++,
+                    diagram.classes.get(i).id, diagram.classes.get(target).id, randomType(random)));
+            }
+        }
+        return diagram;
+    }
+
+    private Diagram edit(Diagram base, Random random) {
+        Diagram version = new Diagram();
+        version.nextId = base.nextId;
+        Set<Integer> deleted = new HashSet<>();
+        for (GeneratedClass original : base.classes) {
+            if (random.nextDouble() < CLASS_DELETE_RATE) {
+                deleted.add(original.id);
+                continue;
+            }
+            String name = random.nextDouble() < RENAME_RATE ? renamed(original.name, random) : original.name;
+            List<String> attributes = new ArrayList<>(original.attributes);
+            if (random.nextDouble() < ATTRIBUTE_EDIT_RATE) {
+                editAttributes(attributes, random);
+            }
+            int x = original.x + random.nextInt(2 * JITTER + 1) - JITTER;
+            int y = original.y + random.nextInt(2 * JITTER + 1) - JITTER;
+            version.classes.add(new GeneratedClass(original.id, name, x, y, attributes));
+        }
+        int added = (int) Math.round(base.classes.size() * CLASS_ADD_RATE);
+        for (int i = 0; i < added; i++) {
+            GeneratedClass near = base.classes.get(random.nextInt(base.classes.size()));
+            version.classes.add(new GeneratedClass(version.nextId++, uniqueName(classCount + i) + "追加",
+                near.x + SPACING_X / 2, near.y + SPACING_Y / 2, randomAttributes(random)));
+        }
+
+        for (GeneratedRelation original : base.relations) {
+            if (deleted.contains(original.sourceId) || deleted.contains(original.targetId)
+                    || random.nextDouble() < RELATION_DELETE_RATE) {
+                continue;
+            }
+            String type = random.nextDouble() < RELATION_RETYPE_RATE ? randomType(random) : original.type;
+            version.relations.add(new GeneratedRelation(original.id, original.sourceId, original.targetId, type));
+        }
+        int addedRelations = (int) Math.round(base.relations.size() * RELATION_ADD_RATE);
+        for (int i = 0; i < addedRelations && version.classes.size() > 1; i++) {
+            GeneratedClass source = version.classes.get(random.nextInt(version.classes.size()));
+            GeneratedClass target = version.classes.get(random.nextInt(version.classes.size()));
+            if (source != target) {
+                version.relations.add(new GeneratedRelation(version.nextId++, source.id, target.id, randomType(random)));
+            }
+        }
+        return version;
+    }
+
+    /**
+     * クラス名は修飾語 + 名詞で作り、組み合わせが尽きたら番号を付けて一意にする。
+     */
+    private static String uniqueName(int index) {
+        int combinations = NOUNS.length * QUALIFIERS.length;
+        int slot = index % combinations;
+        String name = QUALIFIERS[slot / NOUNS.length] + NOUNS[slot % NOUNS.length];
+        int round = index / combinations;
+        return round == 0 ? name : name + round;
+    }
+
+    /**
+     * 実際のリネームに近い小さな編集（1文字の置換、語尾の追加、修飾語の付け替え）を加える。
+     */
+    private static String renamed(String name, Random random) {
+        switch (random.nextInt(3)) {
+            case 0:
+                int position = random.nextInt(name.length());
+                char replacement = NOUNS[random.nextInt(NOUNS.length)].charAt(0);
+                return name.substring(0, position) + replacement + name.substring(position + 1);
+            case 1:
+                return name + (random.nextBoolean() ? "情報" : "Info");
+            default:
+                return QUALIFIERS[1 + random.nextInt(QUALIFIERS.length - 1)] + name;
+        }
+    }
+
+    private static void editAttributes(List<String> attributes, Random random) {
+        int operation = attributes.isEmpty() ? 0 : random.nextInt(3);
+        if (operation == 0) {
+            String attribute = ATTRIBUTES[random.nextInt(ATTRIBUTES.length)];
+            if (!attributes.contains(attribute)) {
+                attributes.add(attribute);
+            }
+        } else if (operation == 1) {
+            attributes.remove(random.nextInt(attributes.size()));
+        } else {
+            int index = random.nextInt(attributes.size());
+            attributes.set(index, attributes.get(index) + "2");
+        }
+    }
+
+    private static List<String> randomAttributes(Random random) {
+        int count = random.nextInt(7);
+        List<String> attributes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String attribute = ATTRIBUTES[random.nextInt(ATTRIBUTES.length)];
+            if (!attributes.contains(attribute)) {
+                attributes.add(attribute);
+            }
+        }
+        return attributes;
+    }
+
+    private static String randomType(Random random) {
+        return RELATION_TYPES[random.nextInt(RELATION_TYPES.length)];
+    }
+
+    private static final class GeneratedClass {
+        final int id;
+        final String name;
+        final int x;
+        final int y;
+        final List<String> attributes;
+
+        GeneratedClass(int id, String name, int x, int y, List<String> attributes) {
+            this.id = id;
+            this.name = name;
+            this.x = x;
+            this.y = y;
+            this.attributes = attributes;
+        }
+    }
+
+    private static final class GeneratedRelation {
+        final int id;
+        final int sourceId;
+        final int targetId;
+        final String type;
+
+        GeneratedRelation(int id, int sourceId, int targetId, String type) {
+            this.id = id;
+            this.sourceId = sourceId;
+            this.targetId = targetId;
+            this.type = type;
+        }
+    }
+
+    private static final class Diagram {
+        final List<GeneratedClass> classes = new ArrayList<>();
+        final List<GeneratedRelation> relations = new ArrayList<>();
+        int nextId = 1;
+
+        void write(Path path) throws IOException {
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+                for (GeneratedClass c : classes) {
+                    writer.write("<" + c.id + ">]Class$(" + c.x + "," + c.y + ")!" + c.name + "!!");
+                    for (String attribute : c.attributes) {
+                        writer.write("-" + attribute + "%");
+                    }
+                    writer.write("!;\n");
+                }
+                for (GeneratedRelation r : relations) {
+                    writer.write("<" + r.id + ">]ClassRelationLink$<" + r.sourceId + ">!<" + r.targetId + ">!"
+                        + r.type + "!!Solid!None!0..*!!!None!1!!;\n");
+                }
+            }
+        }
+    }
+}
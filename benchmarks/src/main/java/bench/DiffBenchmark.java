@@ -0,0 +1,36 @@
+package bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import diff.Diff;
+import diff.DiffEngine;
+
+/**
+ * DiffEngine.diff の計測（マッチング結果は事前に計算しておく）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DiffBenchmark {
+
+    private final DiffEngine diffEngine = new DiffEngine();
+
+    @Benchmark
+    public List<Diff> diff(DiagramFixture fixture) {
+        return diffEngine.diff(fixture.base, fixture.versionA, fixture.matchesA);
+    }
+}
@@ -0,0 +1,72 @@
+package bench;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import diff.ConflictDetector;
+import diff.Diff;
+import diff.DiffEngine;
+import matching.Matcher;
+import merger.Merger;
+import model.UmlClass;
+import model.UmlDiagram;
+import parser.DiagramParser;
+
+/**
+ * 3ファイルの読み込みから、マッチング・差分・競合検出・マージまでを通しで計測する。
+ * 各段階のオブジェクトは計測の前に1回だけ作り、処理だけを計測する。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    private DiagramParser parser;
+    private Matcher matcher;
+    private DiffEngine diffEngine;
+    private ConflictDetector conflictDetector;
+    private Merger merger;
+
+    @Setup
+    public void setUp() {
+        parser = new DiagramParser();
+        matcher = new Matcher();
+        diffEngine = new DiffEngine();
+        conflictDetector = new ConflictDetector();
+        merger = new Merger();
+    }
+
+    @Benchmark
+    public UmlDiagram threeWayMerge(DiagramFixture fixture, Blackhole blackhole) throws IOException {
+        List<UmlDiagram> diagrams = parser.parseAll(
+            List.of(fixture.files.base, fixture.files.versionA, fixture.files.versionB));
+        UmlDiagram base = diagrams.get(0);
+        UmlDiagram versionA = diagrams.get(1);
+        UmlDiagram versionB = diagrams.get(2);
+
+        Map<UmlClass, UmlClass> matchesA = matcher.match(base, versionA);
+        Map<UmlClass, UmlClass> matchesB = matcher.match(base, versionB);
+        List<Diff> diffsA = diffEngine.diff(base, versionA, matchesA);
+        List<Diff> diffsB = diffEngine.diff(base, versionB, matchesB);
+
+        conflictDetector.detectConflicts(diffsA, diffsB, blackhole::consume);
+        return merger.merge(base, versionA, diffsA);
+    }
+}
@@ -0,0 +1,81 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import model.UmlClass;
+import model.UmlDiagram;
+import parser.DiagramParser;
+
+/**
+ * UmlClass.calculateLevenshteinDistance の計測。
+ * 生成したダイアグラムのクラス名と属性名から作った文字列の組に対する1回あたりの時間を測る。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevenshteinBenchmark {
+
+    private static final int PAIRS = 1024;
+
+    private String[] left;
+    private String[] right;
+
+    @Setup
+    public void setUp() throws IOException {
+        Path directory = Files.createTempDirectory("classdiagram-bench");
+        DiagramGenerator.GeneratedFiles files = new DiagramGenerator(PAIRS, 7).writeTo(directory);
+        DiagramParser parser = new DiagramParser();
+        UmlDiagram base = parser.parse(files.base);
+        UmlDiagram version = parser.parse(files.versionA);
+        Files.delete(files.base);
+        Files.delete(files.versionA);
+        Files.delete(files.versionB);
+        Files.delete(directory);
+
+        List<String> names = new ArrayList<>();
+        for (UmlClass umlClass : base.getClasses()) {
+            names.add(umlClass.name);
+            names.addAll(umlClass.attributes);
+        }
+        List<String> others = new ArrayList<>();
+        for (UmlClass umlClass : version.getClasses()) {
+            others.add(umlClass.name);
+            others.addAll(umlClass.attributes);
+        }
+        left = new String[PAIRS];
+        right = new String[PAIRS];
+        for (int i = 0; i < PAIRS; i++) {
+            left[i] = names.get(i * 7 % names.size());
+            right[i] = others.get(i * 13 % others.size());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PAIRS)
+    public void distance(Blackhole blackhole) {
+        for (int i = 0; i < PAIRS; i++) {
+            blackhole.consume(UmlClass.calculateLevenshteinDistance(left[i], right[i]));
+        }
+    }
+}
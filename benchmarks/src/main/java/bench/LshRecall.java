@@ -0,0 +1,182 @@
+package bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import matching.Matcher;
+import matching.MinHashLsh;
+import metrics.Tracer;
+import model.UmlClass;
+import model.UmlDiagram;
+import parser.DiagramParser;
+
+/**
+ * 属性セットのMinHash/LSHによる候補の絞り込みが、総当たりに比べてどれだけの候補を取りこぼすか（再現率）を測る。
+ *
+ * {@link DiagramGenerator} の base と versionA について、属性が3つ以上のクラスの全ペアのJaccard係数を
+ * {@link UmlClass#calculateJaccardSimilarity} で総当たりに求め、係数が指定値以上のペアのうち
+ * LSHの候補に入ったものの割合と、候補ペアの数を設定ごとに表示する。
+ * さらに versionA の一部のクラスを名前を付け替えて遠くに動かし、{@code --attribute-lsh} と同じ設定の
+ * Matcher がそれらを元のクラスに対応付けられた割合（生成時のIDが同じなら正解）も表示する。
+ *
+ * 使い方: {@code java -cp benchmarks.jar bench.LshRecall <クラス数> <シード> [<Jaccard係数>] [<帯x行> ...]}
+ */
+public final class LshRecall {
+
+    private static final int MIN_ATTRIBUTES = 3;          // Matcher と同じく、属性が少ないクラスは対象にしない
+    private static final double RELOCATE_RATE = 0.02;     // 名前を付け替えて動かすクラスの割合
+    private static final int RELOCATE_DISTANCE = 5000;    // 動かす距離（座標の閾値よりはるかに遠い）
+    private static final String[] DEFAULT_SPECS = {"8x2", "16x4", "20x5", "32x4", "50x5"};
+
+    private LshRecall() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("使い方: java bench.LshRecall <クラス数> <シード> [<Jaccard係数>] [<帯x行> ...]");
+            return;
+        }
+        int classCount = Integer.parseInt(args[0]);
+        long seed = Long.parseLong(args[1]);
+        double similarity = args.length > 2 ? Double.parseDouble(args[2]) : 0.8;
+        String[] specs = args.length > 3 ? Arrays.copyOfRange(args, 3, args.length) : DEFAULT_SPECS;
+
+        Path directory = Files.createTempDirectory("classdiagram-lsh");
+        DiagramGenerator.GeneratedFiles files = new DiagramGenerator(classCount, seed).writeTo(directory);
+        DiagramParser parser = new DiagramParser();
+        UmlDiagram base = parser.parse(files.base);
+        UmlDiagram versionA = parser.parse(files.versionA);
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+
+        List<UmlClass> rows = withEnoughAttributes(base);
+        List<UmlClass> columns = withEnoughAttributes(versionA);
+        Map<String, Long> elementHashes = new HashMap<>();
+
+        // 1. 総当たりで係数が similarity 以上のペアを数える
+        long start = System.nanoTime();
+        List<boolean[]> similarPairs = new ArrayList<>(rows.size());
+        long similarCount = 0;
+        for (UmlClass row : rows) {
+            boolean[] similar = new boolean[columns.size()];
+            for (int c = 0; c < columns.size(); c++) {
+                if (row.calculateJaccardSimilarity(columns.get(c)) >= similarity) {
+                    similar[c] = true;
+                    similarCount++;
+                }
+            }
+            similarPairs.add(similar);
+        }
+        System.out.printf(Locale.ROOT, "classes=%d, rows=%d, columns=%d (>= %d attributes), pairs with Jaccard >= %.2f: %d"
+            + " (brute force %.1f ms)%n", classCount, rows.size(), columns.size(), MIN_ATTRIBUTES, similarity, similarCount,
+            (System.nanoTime() - start) / 1e6);
+
+        // 2. 設定ごとに、LSHの候補に入ったペアの割合を求める
+        System.out.println("bands x rows  threshold  P(candidate|s)  candidate pairs  of all pairs  recall");
+        for (String spec : specs) {
+            MinHashLsh lsh = MinHashLsh.parse(spec);
+            start = System.nanoTime();
+            MinHashLsh.Index index = lsh.newIndex();
+            for (int c = 0; c < columns.size(); c++) {
+                index.add(c, signature(lsh, columns.get(c), elementHashes));
+            }
+            long candidatePairs = 0;
+            long found = 0;
+            for (int r = 0; r < rows.size(); r++) {
+                int[] candidates = index.candidates(signature(lsh, rows.get(r), elementHashes));
+                candidatePairs += candidates.length;
+                for (int c : candidates) {
+                    if (similarPairs.get(r)[c]) {
+                        found++;
+                    }
+                }
+            }
+            System.out.printf(Locale.ROOT, "%-12s  %9.3f  %14.3f  %15d  %11.2f%%  %6.4f  (%.1f ms)%n",
+                spec, lsh.threshold(), lsh.candidateProbability(similarity), candidatePairs,
+                100.0 * candidatePairs / ((double) rows.size() * columns.size()),
+                similarCount == 0 ? 1.0 : (double) found / similarCount, (System.nanoTime() - start) / 1e6);
+        }
+
+        // 3. 名前を付け替えて遠くに動かしたクラスを、属性の重なりで元のクラスに対応付けられるか
+        Random random = new Random(seed);
+        UmlDiagram relocated = new UmlDiagram();
+        List<String> relocatedIds = new ArrayList<>();
+        for (UmlClass umlClass : versionA.getClasses()) {
+            if (umlClass.attributes.size() >= MIN_ATTRIBUTES && base.getClassById(umlClass.id) != null
+                    && random.nextDouble() < RELOCATE_RATE) {
+                UmlClass moved = new UmlClass(umlClass.id, "Relocated" + umlClass.id,
+                    umlClass.x + RELOCATE_DISTANCE, umlClass.y + RELOCATE_DISTANCE);
+                moved.attributes.addAll(umlClass.attributes);
+                relocated.addClass(moved);
+                relocatedIds.add(umlClass.id);
+            } else {
+                relocated.addClass(umlClass);
+            }
+        }
+        System.out.println("\nrelocated and renamed classes: " + relocatedIds.size());
+        System.out.println("assignment  bands x rows  recovered  wrong");
+        List<String> settings = new ArrayList<>();
+        settings.add("off");
+        settings.addAll(Arrays.asList(specs));
+        for (Matcher.AssignmentMode mode : Matcher.AssignmentMode.values()) {
+            for (String spec : settings) {
+                MinHashLsh lsh = spec.equals("off") ? null : MinHashLsh.parse(spec);
+                Map<UmlClass, UmlClass> matches = new Matcher(mode, 1, Tracer.NOOP, null, lsh).match(base, relocated);
+                printRecovery(mode, spec, matches, relocatedIds);
+            }
+        }
+    }
+
+    /**
+     * 動かしたクラスのうち元のクラスに対応付けられた数と、生成時のIDが違うペアの数（動かしていないクラスどうしの
+     * 誤りも含む）を表示する。
+     */
+    private static void printRecovery(Matcher.AssignmentMode mode, String spec, Map<UmlClass, UmlClass> matches,
+                                      List<String> relocatedIds) {
+        int recovered = 0;
+        int wrong = 0;
+        for (Map.Entry<UmlClass, UmlClass> entry : matches.entrySet()) {
+            if (!entry.getKey().id.equals(entry.getValue().id)) {
+                wrong++;
+            } else if (relocatedIds.contains(entry.getKey().id)) {
+                recovered++;
+            }
+        }
+        System.out.printf(Locale.ROOT, "%-10s  %-12s  %9d  %5d%n", mode, spec, recovered, wrong);
+    }
+
+    private static List<UmlClass> withEnoughAttributes(UmlDiagram diagram) {
+        List<UmlClass> classes = new ArrayList<>();
+        for (UmlClass umlClass : diagram.getClasses()) {
+            if (umlClass.attributes.size() >= MIN_ATTRIBUTES) {
+                classes.add(umlClass);
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Matcher と同じく、属性の文字列の hashCode を混ぜたものを要素のハッシュにする。
+     */
+    private static int[] signature(MinHashLsh lsh, UmlClass umlClass, Map<String, Long> elementHashes) {
+        long[] hashes = new long[umlClass.attributes.size()];
+        int i = 0;
+        for (String attribute : umlClass.attributes) {
+            hashes[i++] = elementHashes.computeIfAbsent(attribute, a -> MinHashLsh.mix(a.hashCode()));
+        }
+        return lsh.signature(hashes, 0, hashes.length);
+    }
+}
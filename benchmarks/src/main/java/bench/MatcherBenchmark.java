@@ -0,0 +1,46 @@
+package bench;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import matching.Matcher;
+import model.UmlClass;
+
+/**
+ * Matcher.match の計測（貪欲法と最適割り当て）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatcherBenchmark {
+
+    @Param({"GREEDY", "OPTIMAL"})
+    public Matcher.AssignmentMode assignment;
+
+    private Matcher matcher;
+
+    @Setup
+    public void setUp() {
+        matcher = new Matcher(assignment);
+    }
+
+    @Benchmark
+    public Map<UmlClass, UmlClass> match(DiagramFixture fixture) {
+        return matcher.match(fixture.base, fixture.versionA);
+    }
+}
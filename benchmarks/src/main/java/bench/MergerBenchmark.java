@@ -0,0 +1,35 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import merger.Merger;
+import model.UmlDiagram;
+
+/**
+ * Merger.merge の計測（差分は事前に計算しておく）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergerBenchmark {
+
+    private final Merger merger = new Merger();
+
+    @Benchmark
+    public UmlDiagram merge(DiagramFixture fixture) {
+        return merger.merge(fixture.base, fixture.versionA, fixture.diffsA);
+    }
+}
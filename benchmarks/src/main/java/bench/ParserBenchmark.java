@@ -0,0 +1,46 @@
+package bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import model.UmlDiagram;
+import parser.DiagramParser;
+
+/**
+ * DiagramParser.parse の計測（ストリーミング方式と正規表現方式）。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({"STREAMING", "REGEX"})
+    public DiagramParser.Mode mode;
+
+    private DiagramParser parser;
+
+    @Setup
+    public void setUp() {
+        parser = new DiagramParser(mode);
+    }
+
+    @Benchmark
+    public UmlDiagram parse(DiagramFixture fixture) throws IOException {
+        return parser.parse(fixture.files.base);
+    }
+}
@@ -1,15 +1,31 @@
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
+import batch.BatchRunner;
+import batch.BatchSummary;
+import batch.MergeJob;
+import diff.Conflict;
 import diff.ConflictDetector;
+import diff.ConflictSink;
 import diff.Diff;
 import diff.DiffEngine;
+import diff.DiffSink;
+import matching.MatchCache;
+import matching.MatchResult;
 import matching.Matcher;
-import model.UmlClass;
+import matching.MinHashLsh;
+import metrics.PrometheusExporter;
+import metrics.RecordingTracer;
+import metrics.Tracer;
+import model.ColumnarDiagram;
 import model.UmlDiagram;
 import parser.DiagramParser;
+import report.ReportWriter;
 
 /**
  * プログラムの実行を開始するメインクラス。
@@ -17,68 +33,374 @@ import parser.DiagramParser;
 public class Main {
 
     public static void main(String[] args) {
+        // --- 0. オプションの解釈 ---
+        // --assignment=greedy|optimal : マッチングの割り当て方法（既定は greedy）
+        // --attribute-lsh=BxR         : 割り当ての後、残ったクラスどうしを属性の重なり（MinHash/LSH、帯B本×行R）で対応付ける
+        // --batch=PATH                : ディレクトリまたは一覧ファイルにある多数の組をまとめて処理する（MergeJob 参照）
+        // --batch-concurrency=N       : バッチで同時に処理する組の数（既定はCPUコア数）
+        // --batch-report=FILE         : バッチの結果を書き出すレポートファイル（既定は batch-report.tsv）
+        // --compare-assignment        : greedy と optimal の所要時間・総コストの差を表示する
+        // --exact-match=MODE          : 名前と属性が同じクラスを距離の計算より先に対応付ける（既定は content。position は座標も同じ場合だけ、off は無効）
+        // --match-cache=FILE          : クラスのペアごとの距離をファイルにキャッシュし、次回の実行で再利用する
+        // --match-cache-size=N        : キャッシュする距離の最大件数（既定は MatchCache.DEFAULT_CAPACITY）
+        // --metrics=FILE             : フェーズごとの所要時間・割り当て量の分布（p50, p99 など）とカウンタを Prometheus のテキスト形式で FILE に書き出す
+        // --n-way=DIR                 : DIR の base.txt と version*.txt すべてを一度にマージする（N者間マージ）
+        // --parallelism=N             : 読み込みとマッチングのコスト計算に使うスレッド数（既定はCPUコア数）
+        // --parser=streaming|regex    : ファイルの読み込み方式（既定は streaming）
+        // --report=FILE               : 差分と競合を表示せずに FILE へ1件1行で書き出す（.csv なら CSV、それ以外は JSON Lines。.gz で終われば gzip 圧縮）
+        // --snapshot                  : 読み込んだ図を .txt の隣に .snapshot として保存し、テキストが変わっていなければ次回はそちらを読む
+        // --trace                     : フェーズごとの所要時間とカウンタを記録し、最後に表示する
+        // --verbose                   : 読み込んだクラスやペアごとの距離の内訳などの詳細ログを表示する（--trace を含む）
+        Matcher.AssignmentMode assignmentMode = Matcher.AssignmentMode.GREEDY;
+        MinHashLsh attributeLsh = null;
+        Path batchPath = null;
+        int batchConcurrency = Runtime.getRuntime().availableProcessors();
+        Path batchReportPath = Paths.get("batch-report.tsv");
+        boolean compareAssignment = false;
+        Matcher.ExactMatchMode exactMatchMode = Matcher.ExactMatchMode.CONTENT;
+        Path matchCachePath = null;
+        int matchCacheSize = MatchCache.DEFAULT_CAPACITY;
+        Path metricsPath = null;
+        Path nWayDirectory = null;
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        DiagramParser.Mode parserMode = DiagramParser.Mode.STREAMING;
+        Path reportPath = null;
+        boolean useSnapshots = false;
+        boolean trace = false;
+        boolean verbose = false;
+        for (String arg : args) {
+            if (arg.startsWith("--assignment=")) {
+                assignmentMode = Matcher.AssignmentMode.valueOf(arg.substring("--assignment=".length()).toUpperCase());
+            } else if (arg.startsWith("--attribute-lsh=")) {
+                attributeLsh = MinHashLsh.parse(arg.substring("--attribute-lsh=".length()));
+            } else if (arg.startsWith("--batch=")) {
+                batchPath = Paths.get(arg.substring("--batch=".length()));
+            } else if (arg.startsWith("--batch-concurrency=")) {
+                batchConcurrency = Integer.parseInt(arg.substring("--batch-concurrency=".length()));
+            } else if (arg.startsWith("--batch-report=")) {
+                batchReportPath = Paths.get(arg.substring("--batch-report=".length()));
+            } else if (arg.equals("--compare-assignment")) {
+                compareAssignment = true;
+            } else if (arg.startsWith("--exact-match=")) {
+                exactMatchMode = Matcher.ExactMatchMode.valueOf(arg.substring("--exact-match=".length()).toUpperCase());
+            } else if (arg.startsWith("--match-cache=")) {
+                matchCachePath = Paths.get(arg.substring("--match-cache=".length()));
+            } else if (arg.startsWith("--match-cache-size=")) {
+                matchCacheSize = Integer.parseInt(arg.substring("--match-cache-size=".length()));
+            } else if (arg.startsWith("--metrics=")) {
+                metricsPath = Paths.get(arg.substring("--metrics=".length()));
+            } else if (arg.startsWith("--n-way=")) {
+                nWayDirectory = Paths.get(arg.substring("--n-way=".length()));
+            } else if (arg.startsWith("--parallelism=")) {
+                parallelism = Integer.parseInt(arg.substring("--parallelism=".length()));
+            } else if (arg.startsWith("--parser=")) {
+                parserMode = DiagramParser.Mode.valueOf(arg.substring("--parser=".length()).toUpperCase());
+            } else if (arg.startsWith("--report=")) {
+                reportPath = Paths.get(arg.substring("--report=".length()));
+            } else if (arg.equals("--snapshot")) {
+                useSnapshots = true;
+            } else if (arg.equals("--trace")) {
+                trace = true;
+            } else if (arg.equals("--verbose")) {
+                verbose = true;
+            } else {
+                System.err.println("Unknown option: " + arg);
+                return;
+            }
+        }
+        if (reportPath != null && batchPath != null) {
+            System.err.println("--report cannot be used with --batch (use --batch-report)");
+            return;
+        }
+
         // --- 1. 準備 ---
-        DiagramParser parser = new DiagramParser();
-        Matcher matcher = new Matcher();
-        DiffEngine diffEngine = new DiffEngine();
-        ConflictDetector conflictDetector = new ConflictDetector();
+        // 計測しないときは Tracer.NOOP を使うので、フェーズの計測にコストはかからない
+        RecordingTracer recordingTracer = trace || verbose || metricsPath != null ? new RecordingTracer(verbose, System.out) : null;
+        boolean printSummary = trace || verbose;
+        Tracer tracer = recordingTracer != null ? recordingTracer : Tracer.NOOP;
+        DiagramParser parser = new DiagramParser(parserMode, parallelism, tracer, useSnapshots);
+        DiffEngine diffEngine = new DiffEngine(tracer);
+        ConflictDetector conflictDetector = new ConflictDetector(tracer);
+
+        // 差分と競合は見つかった順に、レポートがあればそちらへ、なければ標準出力へ書く
+        try (ReportWriter report = reportPath != null ? ReportWriter.open(reportPath) : null) {
+            // 距離のキャッシュは base-A と base-B のマッチングで共有する
+            MatchCache matchCache = matchCachePath != null ? MatchCache.load(matchCachePath, matchCacheSize) : null;
+            Matcher matcher = new Matcher(assignmentMode, parallelism, tracer, matchCache, attributeLsh, exactMatchMode);
+
+            if (batchPath != null) {
+                runBatch(batchPath, batchReportPath, new BatchRunner(parser, matcher, diffEngine, conflictDetector, batchConcurrency));
+                printFooter(matchCache, matchCachePath, recordingTracer, printSummary, metricsPath);
+                return;
+            }
+
+            if (nWayDirectory != null) {
+                runNWay(nWayDirectory, parser, matcher, diffEngine, conflictDetector, report);
+                printReportFooter(report, reportPath);
+                printFooter(matchCache, matchCachePath, recordingTracer, printSummary, metricsPath);
+                return;
+            }
 
-        try {
             // --- 2. ファイルの読み込み ---
             System.out.println("--- Parsing Files ---");
             Path basePath = Paths.get("diagrams/base.txt");
             Path versionAPath = Paths.get("diagrams/versionA.txt");
             Path versionBPath = Paths.get("diagrams/versionB.txt");
 
-            UmlDiagram baseDiagram = parser.parse(basePath);
-            UmlDiagram versionADiagram = parser.parse(versionAPath);
-            UmlDiagram versionBDiagram = parser.parse(versionBPath);
+            // 3つのファイルは並行して読み込む（大きなファイルはさらにチャンクに分けて並列に読む）
+            List<UmlDiagram> diagrams = parser.parseAll(List.of(basePath, versionAPath, versionBPath));
+            UmlDiagram baseDiagram = diagrams.get(0);
+            UmlDiagram versionADiagram = diagrams.get(1);
+            UmlDiagram versionBDiagram = diagrams.get(2);
 
             System.out.println("Base Diagram Parsed Successfully.");
-            baseDiagram.getClasses().forEach(System.out::println);
+            if (tracer.isVerbose()) {
+                baseDiagram.getClasses().forEach(System.out::println);
+            }
             System.out.println("\nVersion A Diagram Parsed Successfully.");
-            versionADiagram.getClasses().forEach(System.out::println);
+            if (tracer.isVerbose()) {
+                versionADiagram.getClasses().forEach(System.out::println);
+            }
             System.out.println("\nVersion B Diagram Parsed Successfully.");
-            versionBDiagram.getClasses().forEach(System.out::println);
+            if (tracer.isVerbose()) {
+                versionBDiagram.getClasses().forEach(System.out::println);
+            }
 
 
+            if (compareAssignment) {
+                // 比較用のマッチャーも、割り当て方式以外は本番と同じ設定（完全一致の扱い・キャッシュ・LSH）で作る。
+                // 計測には含めない
+                Matcher greedy = new Matcher(Matcher.AssignmentMode.GREEDY, parallelism, Tracer.NOOP,
+                    matchCache, attributeLsh, exactMatchMode);
+                Matcher optimal = new Matcher(Matcher.AssignmentMode.OPTIMAL, parallelism, Tracer.NOOP,
+                    matchCache, attributeLsh, exactMatchMode);
+                if (baseDiagram.getClasses().isEmpty()) {
+                    printAssignmentComparison("A vs B", versionADiagram, versionBDiagram, greedy, optimal);
+                } else {
+                    printAssignmentComparison("Base vs A", baseDiagram, versionADiagram, greedy, optimal);
+                    printAssignmentComparison("Base vs B", baseDiagram, versionBDiagram, greedy, optimal);
+                }
+            }
+
             // --- ★★★ ここからが改善ロジック ★★★ ---
-            List<String> conflicts;
+            // 競合は見つかった順にそのまま表示する（一覧をためてから表示しない）
+            PrintingConflictSink conflictSink = new PrintingConflictSink(
+                report != null ? report.conflictSink(List.of("versionA", "versionB")) : null);
 
             // baseダイアグラムが空かどうかで処理を分岐
             if (baseDiagram.getClasses().isEmpty()) {
                 // 【baseが空の場合】 versionA と versionB を直接比較して競合を検出
-                conflicts = conflictDetector.detectConflictsInTwoWayMerge(versionADiagram, versionBDiagram, matcher);
+                System.out.println("\n--- Conflict Results ---");
+                conflictDetector.detectConflictsInTwoWayMerge(versionADiagram, versionBDiagram, matcher, conflictSink);
 
             } else {
                 // 【baseが存在する場合】 従来の3者間マージの競合検出を実行
+                // 各ダイアグラムは一度だけ列指向に変換し、マッチングと差分検出で共有する
+                ColumnarDiagram baseView = ColumnarDiagram.of(baseDiagram);
+                ColumnarDiagram versionAView = ColumnarDiagram.of(versionADiagram);
+                ColumnarDiagram versionBView = ColumnarDiagram.of(versionBDiagram);
+
                 System.out.println("\n--- Running Diff (Base vs Version A) ---");
-                Map<UmlClass, UmlClass> matchesA = matcher.match(baseDiagram, versionADiagram);
-                List<Diff> diffsA = diffEngine.diff(baseDiagram, versionADiagram, matchesA);
+                int[] matchesA = matcher.matchIndices(baseView, versionAView);
                 System.out.println("\n--- Difference Results (Base vs A) ---");
-                diffsA.forEach(System.out::println);
+                List<Diff> diffsA = new ArrayList<>();
+                printDiffCount(report, diffEngine.diff(baseView, versionAView, matchesA, diffSink(diffsA, report, "versionA")));
 
                 System.out.println("\n--- Running Diff (Base vs Version B) ---");
-                Map<UmlClass, UmlClass> matchesB = matcher.match(baseDiagram, versionBDiagram);
-                List<Diff> diffsB = diffEngine.diff(baseDiagram, versionBDiagram, matchesB);
+                int[] matchesB = matcher.matchIndices(baseView, versionBView);
                 System.out.println("\n--- Difference Results (Base vs B) ---");
-                diffsB.forEach(System.out::println);
+                List<Diff> diffsB = new ArrayList<>();
+                printDiffCount(report, diffEngine.diff(baseView, versionBView, matchesB, diffSink(diffsB, report, "versionB")));
 
-                conflicts = conflictDetector.detectConflicts(diffsA, diffsB);
+                System.out.println("\n--- Conflict Results ---");
+                conflictDetector.detectConflicts(diffsA, diffsB, conflictSink);
             }
             
             // --- 競合結果の表示 ---
-            System.out.println("\n--- Conflict Results ---");
-            if (conflicts.isEmpty()) {
-                System.out.println("No conflicts were detected.");
-            } else {
-                System.out.println("The following conflicts were detected:");
-                conflicts.forEach(System.out::println);
-            }
+            conflictSink.printSummary();
+
+            printReportFooter(report, reportPath);
+            printFooter(matchCache, matchCachePath, recordingTracer, printSummary, metricsPath);
 
         } catch (Exception e) {
             System.err.println("エラーが発生しました: " + e.getMessage());
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * 距離のキャッシュを保存して統計を表示し、計測が有効なら集計を表示・書き出す。
+     * バッチでは全組が同じ Tracer に記録するので、集計は全組を通したものになる。
+     */
+    private static void printFooter(MatchCache matchCache, Path matchCachePath, RecordingTracer recordingTracer,
+                                    boolean printSummary, Path metricsPath) throws IOException {
+        if (matchCache != null) {
+            matchCache.save(matchCachePath);
+            System.out.println("\n" + matchCache);
+        }
+
+        if (recordingTracer != null && printSummary) {
+            System.out.println();
+            System.out.print(recordingTracer.summary());
+        }
+        if (recordingTracer != null && metricsPath != null) {
+            PrometheusExporter.write(recordingTracer, metricsPath);
+            System.out.println("\nMetrics written to " + metricsPath);
+        }
+    }
+
+    /**
+     * レポートに書き出した件数を表示する。
+     */
+    private static void printReportFooter(ReportWriter report, Path reportPath) {
+        if (report != null) {
+            System.out.println("\nReport written to " + reportPath + " (" + report.getRecordCount() + " records)");
+        }
+    }
+
+    /**
+     * レポートへ書いた場合は、表示の代わりに差分の件数を表示する。
+     */
+    private static void printDiffCount(ReportWriter report, int count) {
+        if (report != null) {
+            System.out.println(count + " differences written to the report.");
+        }
+    }
+
+    /**
+     * 差分をリストに集めながら、レポートがあればそちらへ、なければ標準出力へ1件ずつ書く出力先を返す。
+     * リストは競合検出に使う（差分の表示用の文字列は組み立てずに保持する）。
+     */
+    private static DiffSink diffSink(List<Diff> diffs, ReportWriter report, String comparison) {
+        DiffSink output = report != null ? report.diffSink(comparison) : System.out::println;
+        return diff -> {
+            diffs.add(diff);
+            output.accept(diff);
+        };
+    }
+
+    /**
+     * バッチモード：組を集めてまとめて処理し、集計を表示する。
+     */
+    private static void runBatch(Path batchPath, Path reportPath, BatchRunner runner) throws IOException, InterruptedException {
+        List<MergeJob> jobs = MergeJob.discover(batchPath);
+        System.out.println("--- Running Batch (" + jobs.size() + " jobs) ---");
+        BatchSummary summary = runner.run(jobs, reportPath);
+        System.out.println(summary);
+        System.out.println("Report written to " + reportPath);
+    }
+
+    /**
+     * N者間マージ：base と全バージョンを並行して読み込み、baseを一度だけ索引化して全バージョンとマッチングし、
+     * 全バージョンの差分をまとめて1回で競合検出する。
+     */
+    private static void runNWay(Path directory, DiagramParser parser, Matcher matcher, DiffEngine diffEngine,
+                                ConflictDetector conflictDetector, ReportWriter report) throws IOException {
+        List<Path> versionPaths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "version*.txt")) {
+            stream.forEach(versionPaths::add);
+        }
+        versionPaths.sort(null);
+        if (versionPaths.size() < 2) {
+            System.err.println("N-way merge needs at least two version*.txt files in " + directory);
+            return;
+        }
+
+        System.out.println("--- Parsing Files (" + (versionPaths.size() + 1) + " files) ---");
+        List<Path> paths = new ArrayList<>();
+        paths.add(directory.resolve("base.txt"));
+        paths.addAll(versionPaths);
+        List<UmlDiagram> diagrams = parser.parseAll(paths);
+        UmlDiagram baseDiagram = diagrams.get(0);
+        List<UmlDiagram> versionDiagrams = diagrams.subList(1, diagrams.size());
+        if (baseDiagram.getClasses().isEmpty()) {
+            System.err.println("N-way merge needs a non-empty base.txt in " + directory);
+            return;
+        }
+
+        List<String> versionNames = new ArrayList<>();
+        for (Path versionPath : versionPaths) {
+            String fileName = versionPath.getFileName().toString();
+            versionNames.add(fileName.substring(0, fileName.length() - ".txt".length()));
+        }
+        System.out.println("Base Diagram and " + versionNames.size() + " versions Parsed Successfully: " + versionNames);
+
+        System.out.println("\n--- Running Diff (Base vs " + versionNames.size() + " versions) ---");
+        ColumnarDiagram baseView = ColumnarDiagram.of(baseDiagram);
+        List<ColumnarDiagram> versionViews = new ArrayList<>();
+        for (UmlDiagram versionDiagram : versionDiagrams) {
+            versionViews.add(ColumnarDiagram.of(versionDiagram));
+        }
+        List<int[]> matches = matcher.matchAllIndices(baseView, versionViews);
+        List<List<Diff>> diffsPerVersion = new ArrayList<>();
+        for (int v = 0; v < versionViews.size(); v++) {
+            System.out.println("\n--- Difference Results (Base vs " + versionNames.get(v) + ") ---");
+            List<Diff> diffs = new ArrayList<>();
+            int count = diffEngine.diff(baseView, versionViews.get(v), matches.get(v), diffSink(diffs, report, versionNames.get(v)));
+            printDiffCount(report, count);
+            diffsPerVersion.add(diffs);
+        }
+
+        System.out.println("\n--- Conflict Results ---");
+        PrintingConflictSink conflictSink = new PrintingConflictSink(report != null ? report.conflictSink(versionNames) : null);
+        conflictDetector.detectConflictsAcrossVersions(versionNames, diffsPerVersion, conflictSink);
+        conflictSink.printSummary();
+    }
+
+    /**
+     * 競合を受け取るたびに標準出力へ表示する出力先。最初の1件の前に見出しを表示する。
+     * レポートの出力先を渡した場合は表示せずにそちらへ渡し、件数だけを数える。
+     */
+    private static final class PrintingConflictSink implements ConflictSink {
+        private final ConflictSink report; // null なら標準出力へ表示する
+        private int count = 0;
+
+        PrintingConflictSink(ConflictSink report) {
+            this.report = report;
+        }
+
+        @Override
+        public void accept(Conflict conflict) {
+            if (report != null) {
+                count++;
+                report.accept(conflict);
+                return;
+            }
+            if (count++ == 0) {
+                System.out.println("The following conflicts were detected:");
+            }
+            System.out.println(conflict);
+        }
+
+        /**
+         * 競合がなかったことか、レポートへ書いた場合はその件数を表示する。
+         */
+        void printSummary() {
+            if (count == 0) {
+                System.out.println("No conflicts were detected.");
+            } else if (report != null) {
+                System.out.println(count + " conflicts were detected (written to the report).");
+            }
+        }
+    }
+
+    /**
+     * 同じダイアグラムの組を greedy と optimal の両方でマッチングし、所要時間と総コストの差を表示する。
+     * キャッシュを使う場合は greedy が先に距離を計算して入れるので、optimal の所要時間はその分短く出る。
+     * @param greedyMatcher 割り当て方式が GREEDY のマッチャー
+     * @param optimalMatcher 割り当て方式が OPTIMAL の、ほかは greedyMatcher と同じ設定のマッチャー
+     */
+    private static void printAssignmentComparison(String label, UmlDiagram diagramA, UmlDiagram diagramB,
+                                                  Matcher greedyMatcher, Matcher optimalMatcher) {
+        MatchResult greedy = greedyMatcher.matchWithResult(diagramA, diagramB);
+        MatchResult optimal = optimalMatcher.matchWithResult(diagramA, diagramB);
+
+        System.out.println("\n--- Assignment Comparison (" + label + ") ---");
+        System.out.println(greedy);
+        System.out.println(optimal);
+        System.out.println(String.format("Difference (optimal - greedy): totalCost=%.4f, matched=%d, time=%.3f ms",
+            optimal.getTotalCost() - greedy.getTotalCost(),
+            optimal.getMatches().size() - greedy.getMatches().size(),
+            (optimal.getElapsedNanos() - greedy.getElapsedNanos()) / 1_000_000.0));
+    }
+}
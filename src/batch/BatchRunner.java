@@ -0,0 +1,162 @@
+package batch;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import diff.ConflictDetector;
+import diff.Diff;
+import diff.DiffEngine;
+import matching.Matcher;
+import model.ColumnarDiagram;
+import model.UmlDiagram;
+import parser.DiagramParser;
+
+/**
+ * 多数のクラス図の組（base・versionA・versionB）に対して、読み込み → マッチング → 差分 → 競合検出を
+ * まとめて実行するクラス。
+ *
+ * 組ごとに仮想スレッドを1本起動し、同時に処理する組の数はセマフォで concurrency 個までに抑える。
+ * パーサ・Matcher・DiffEngine・ConflictDetector はすべての組で同じインスタンスを共有する。
+ * 結果は組の順番どおりにレポートファイル（タブ区切り）へ書き出し、最後に全体の集計を '#' 行で追記する。
+ */
+public class BatchRunner {
+
+    static final String REPORT_HEADER =
+        "name\tstatus\tmode\tbase_classes\tdiffs_a\tdiffs_b\tconflicts\tlatency_ms\terror";
+
+    private final DiagramParser parser;
+    private final Matcher matcher;
+    private final DiffEngine diffEngine;
+    private final ConflictDetector conflictDetector;
+    private final int concurrency;
+
+    /**
+     * @param parser 各組の読み込みに使うパーサ
+     * @param matcher 各組のマッチングに使うMatcher
+     * @param diffEngine 各組の差分検出に使うDiffEngine
+     * @param conflictDetector 各組の競合検出に使うConflictDetector
+     * @param concurrency 同時に処理する組の最大数
+     */
+    public BatchRunner(DiagramParser parser, Matcher matcher, DiffEngine diffEngine,
+                       ConflictDetector conflictDetector, int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("concurrency must be at least 1: " + concurrency);
+        }
+        this.parser = parser;
+        this.matcher = matcher;
+        this.diffEngine = diffEngine;
+        this.conflictDetector = conflictDetector;
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * すべての組を処理し、レポートファイルを書き出します。
+     * 1組の処理に失敗しても他の組の処理は続け、その組はレポートに FAILED として記録する。
+     * @param jobs 処理する組
+     * @param reportFile 書き出すレポートファイル
+     * @return 全体の集計
+     * @throws IOException レポートファイルの書き込みに失敗した場合
+     * @throws InterruptedException 処理の途中で割り込まれた場合
+     */
+    public BatchSummary run(List<MergeJob> jobs, Path reportFile) throws IOException, InterruptedException {
+        Semaphore permits = new Semaphore(concurrency);
+        List<JobResult> results = new ArrayList<>(jobs.size());
+        long startTime = System.nanoTime();
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+             BufferedWriter report = Files.newBufferedWriter(reportFile, StandardCharsets.UTF_8)) {
+            List<Future<JobResult>> futures = new ArrayList<>(jobs.size());
+            for (MergeJob job : jobs) {
+                futures.add(executor.submit(() -> {
+                    permits.acquire();
+                    try {
+                        return process(job);
+                    } finally {
+                        permits.release();
+                    }
+                }));
+            }
+
+            report.write(REPORT_HEADER);
+            report.newLine();
+            // 終わった順ではなく組の順番どおりに書く（前の組が終わるまで後の組の行は書かない）
+            for (int i = 0; i < jobs.size(); i++) {
+                JobResult result;
+                try {
+                    result = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    result = JobResult.failed(jobs.get(i), 0, e.getCause());
+                }
+                results.add(result);
+                writeResult(report, result);
+            }
+
+            BatchSummary summary = new BatchSummary(results, System.nanoTime() - startTime);
+            report.write("# " + summary);
+            report.newLine();
+            return summary;
+        }
+    }
+
+    /**
+     * 1組を処理する。baseが空の場合は、Main と同じく A と B の重複追加の検出を行う。
+     */
+    JobResult process(MergeJob job) {
+        long startTime = System.nanoTime();
+        try {
+            List<UmlDiagram> diagrams = parser.parseAll(List.of(job.basePath, job.versionAPath, job.versionBPath));
+            UmlDiagram base = diagrams.get(0);
+            UmlDiagram versionA = diagrams.get(1);
+            UmlDiagram versionB = diagrams.get(2);
+            int[] conflicts = new int[1];
+
+            if (base.getClasses().isEmpty()) {
+                conflictDetector.detectConflictsInTwoWayMerge(versionA, versionB, matcher, conflict -> conflicts[0]++);
+                return JobResult.succeeded(job, true, 0, 0, 0, conflicts[0], System.nanoTime() - startTime);
+            }
+
+            ColumnarDiagram baseView = ColumnarDiagram.of(base);
+            ColumnarDiagram versionAView = ColumnarDiagram.of(versionA);
+            ColumnarDiagram versionBView = ColumnarDiagram.of(versionB);
+            int[] matchesA = matcher.matchIndices(baseView, versionAView);
+            int[] matchesB = matcher.matchIndices(baseView, versionBView);
+            List<Diff> diffsA = diffEngine.diff(baseView, versionAView, matchesA);
+            List<Diff> diffsB = diffEngine.diff(baseView, versionBView, matchesB);
+            conflictDetector.detectConflicts(diffsA, diffsB, conflict -> conflicts[0]++);
+            return JobResult.succeeded(job, false, base.getClasses().size(), diffsA.size(), diffsB.size(), conflicts[0],
+                System.nanoTime() - startTime);
+        } catch (Exception e) {
+            return JobResult.failed(job, System.nanoTime() - startTime, e);
+        }
+    }
+
+    private static void writeResult(BufferedWriter report, JobResult result) throws IOException {
+        report.write(String.join("\t",
+            clean(result.job.name),
+            result.status.name(),
+            result.status == JobResult.Status.OK ? (result.twoWay ? "2-way" : "3-way") : "",
+            Integer.toString(result.baseClasses),
+            Integer.toString(result.diffsA),
+            Integer.toString(result.diffsB),
+            Integer.toString(result.conflicts),
+            String.format(Locale.ROOT, "%.3f", result.latencyNanos / 1e6),
+            result.error != null ? clean(result.error) : ""));
+        report.newLine();
+    }
+
+    // タブ区切りの列が崩れないように、タブと改行を空白に置き換える
+    private static String clean(String value) {
+        return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+    }
+}
@@ -0,0 +1,89 @@
+package batch;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * バッチ全体の集計（件数・スループット・所要時間の分位点）。
+ */
+public class BatchSummary {
+
+    private final int jobs;
+    private final int succeeded;
+    private final int failed;
+    private final long conflicts;
+    private final long wallNanos;
+    private final long[] sortedLatencies;
+
+    BatchSummary(List<JobResult> results, long wallNanos) {
+        int ok = 0;
+        long conflictCount = 0;
+        long[] latencies = new long[results.size()];
+        for (int i = 0; i < results.size(); i++) {
+            JobResult result = results.get(i);
+            if (result.status == JobResult.Status.OK) {
+                ok++;
+                conflictCount += result.conflicts;
+            }
+            latencies[i] = result.latencyNanos;
+        }
+        Arrays.sort(latencies);
+        this.jobs = results.size();
+        this.succeeded = ok;
+        this.failed = results.size() - ok;
+        this.conflicts = conflictCount;
+        this.wallNanos = wallNanos;
+        this.sortedLatencies = latencies;
+    }
+
+    public int getJobs() {
+        return jobs;
+    }
+
+    public int getSucceeded() {
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return failed;
+    }
+
+    public long getConflicts() {
+        return conflicts;
+    }
+
+    public long getWallNanos() {
+        return wallNanos;
+    }
+
+    /** 1秒あたりに処理した組の数 */
+    public double getThroughput() {
+        return wallNanos == 0 ? 0.0 : jobs / (wallNanos / 1e9);
+    }
+
+    /**
+     * 1組あたりの所要時間の分位点を返します（最近傍順位法）。
+     * @param percentile 0より大きく100以下の値
+     * @return 所要時間（ナノ秒）。組が1つもなければ 0
+     */
+    public long getLatencyPercentile(double percentile) {
+        if (!(percentile > 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("percentile must be in (0, 100]: " + percentile);
+        }
+        if (sortedLatencies.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100.0 * sortedLatencies.length);
+        return sortedLatencies[Math.max(0, rank - 1)];
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+            "jobs=%d, succeeded=%d, failed=%d, conflicts=%d, wall=%.3f s, throughput=%.2f jobs/s, "
+                + "latency p50=%.3f ms, p90=%.3f ms, p99=%.3f ms, max=%.3f ms",
+            jobs, succeeded, failed, conflicts, wallNanos / 1e9, getThroughput(),
+            getLatencyPercentile(50) / 1e6, getLatencyPercentile(90) / 1e6,
+            getLatencyPercentile(99) / 1e6, getLatencyPercentile(100) / 1e6);
+    }
+}
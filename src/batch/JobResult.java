@@ -0,0 +1,45 @@
+package batch;
+
+/**
+ * 1組のクラス図を処理した結果。
+ */
+public class JobResult {
+
+    public enum Status {
+        OK,
+        FAILED
+    }
+
+    public final MergeJob job;
+    public final Status status;
+    public final boolean twoWay;     // baseが空で、AとBの重複追加の検出を行った場合は true
+    public final int baseClasses;
+    public final int diffsA;         // 2者間の場合は 0
+    public final int diffsB;         // 2者間の場合は 0
+    public final int conflicts;      // 競合（2者間の場合は重複追加の可能性）の件数
+    public final long latencyNanos;  // 読み込みから競合検出までの所要時間
+    public final String error;       // 失敗した場合の理由（成功した場合は null）
+
+    JobResult(MergeJob job, Status status, boolean twoWay, int baseClasses, int diffsA, int diffsB, int conflicts,
+              long latencyNanos, String error) {
+        this.job = job;
+        this.status = status;
+        this.twoWay = twoWay;
+        this.baseClasses = baseClasses;
+        this.diffsA = diffsA;
+        this.diffsB = diffsB;
+        this.conflicts = conflicts;
+        this.latencyNanos = latencyNanos;
+        this.error = error;
+    }
+
+    static JobResult succeeded(MergeJob job, boolean twoWay, int baseClasses, int diffsA, int diffsB, int conflicts,
+                               long latencyNanos) {
+        return new JobResult(job, Status.OK, twoWay, baseClasses, diffsA, diffsB, conflicts, latencyNanos, null);
+    }
+
+    static JobResult failed(MergeJob job, long latencyNanos, Throwable error) {
+        String message = error.getClass().getSimpleName() + (error.getMessage() != null ? ": " + error.getMessage() : "");
+        return new JobResult(job, Status.FAILED, false, 0, 0, 0, 0, latencyNanos, message);
+    }
+}
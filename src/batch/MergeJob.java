@@ -0,0 +1,99 @@
+package batch;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * バッチ処理で扱う1組のクラス図（base・versionA・versionB）。
+ */
+public class MergeJob {
+
+    static final String BASE_FILE = "base.txt";
+    static final String VERSION_A_FILE = "versionA.txt";
+    static final String VERSION_B_FILE = "versionB.txt";
+
+    public final String name;
+    public final Path basePath;
+    public final Path versionAPath;
+    public final Path versionBPath;
+
+    public MergeJob(String name, Path basePath, Path versionAPath, Path versionBPath) {
+        this.name = name;
+        this.basePath = basePath;
+        this.versionAPath = versionAPath;
+        this.versionBPath = versionBPath;
+    }
+
+    /**
+     * ディレクトリならその中の組を、それ以外なら一覧ファイルとして組を読み込みます。
+     * @see #fromDirectory(Path)
+     * @see #fromManifest(Path)
+     */
+    public static List<MergeJob> discover(Path path) throws IOException {
+        return Files.isDirectory(path) ? fromDirectory(path) : fromManifest(path);
+    }
+
+    /**
+     * base.txt・versionA.txt・versionB.txt の3ファイルがそろっているディレクトリを1組とし、
+     * 指定したディレクトリ自身とその直下のサブディレクトリから組を集めます（名前順）。
+     * 組の名前はディレクトリ名になる。
+     */
+    public static List<MergeJob> fromDirectory(Path directory) throws IOException {
+        List<MergeJob> jobs = new ArrayList<>();
+        addIfComplete(directory, jobs);
+        try (Stream<Path> children = Files.list(directory)) {
+            for (Path child : (Iterable<Path>) children.filter(Files::isDirectory).sorted()::iterator) {
+                addIfComplete(child, jobs);
+            }
+        }
+        return jobs;
+    }
+
+    private static void addIfComplete(Path directory, List<MergeJob> jobs) {
+        Path base = directory.resolve(BASE_FILE);
+        Path versionA = directory.resolve(VERSION_A_FILE);
+        Path versionB = directory.resolve(VERSION_B_FILE);
+        if (Files.isRegularFile(base) && Files.isRegularFile(versionA) && Files.isRegularFile(versionB)) {
+            Path fileName = directory.toAbsolutePath().normalize().getFileName();
+            jobs.add(new MergeJob(fileName != null ? fileName.toString() : directory.toString(), base, versionA, versionB));
+        }
+    }
+
+    /**
+     * 一覧ファイルから組を読み込みます。1行に1組を、タブ区切りで
+     * {@code 名前 base versionA versionB} または {@code base versionA versionB} の形で書く。
+     * 空行と '#' で始まる行は無視する。相対パスは一覧ファイルのあるディレクトリを基準にする。
+     */
+    public static List<MergeJob> fromManifest(Path manifest) throws IOException {
+        Path directory = manifest.toAbsolutePath().getParent();
+        List<MergeJob> jobs = new ArrayList<>();
+        int lineNumber = 0;
+        for (String line : Files.readAllLines(manifest)) {
+            lineNumber++;
+            String trimmed = line.strip();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] fields = trimmed.split("\t");
+            if (fields.length != 3 && fields.length != 4) {
+                throw new IOException(manifest + ":" + lineNumber + ": expected 3 or 4 tab-separated fields but found " + fields.length);
+            }
+            int offset = fields.length - 3;
+            String name = offset == 1 ? fields[0] : "line" + lineNumber;
+            jobs.add(new MergeJob(name,
+                directory.resolve(fields[offset].strip()),
+                directory.resolve(fields[offset + 1].strip()),
+                directory.resolve(fields[offset + 2].strip())));
+        }
+        return jobs;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + basePath + ", " + versionAPath + ", " + versionBPath + ")";
+    }
+}
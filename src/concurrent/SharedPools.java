@@ -0,0 +1,31 @@
+package concurrent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * 並列度ごとに1つだけ作り、プロセス全体で共有する ForkJoinPool。
+ *
+ * Matcher や DiagramParser をインスタンスごとに自前のプールで動かすと、閉じられないまま
+ * スレッドが溜まっていくので、同じ並列度のインスタンスはすべてここのプールを使う。
+ * ワーカースレッドはデーモンで、しばらく仕事がなければ終了するので、閉じる必要はない。
+ */
+public final class SharedPools {
+
+    private static final Map<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
+    private SharedPools() {
+    }
+
+    /**
+     * 指定した並列度の共有プールを返します（初めて使うときに作る）。
+     * @param parallelism 並列度（2以上）
+     */
+    public static ForkJoinPool forParallelism(int parallelism) {
+        if (parallelism < 2) {
+            throw new IllegalArgumentException("parallelism must be at least 2: " + parallelism);
+        }
+        return POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+}
@@ -0,0 +1,93 @@
+package diff;
+
+import java.util.List;
+
+import model.UmlClass;
+
+/**
+ * 検出された1件の競合を表すクラス。
+ * 3者間マージでは競合した2つの差分を、2者間マージでは重複追加の可能性があるクラスの組を、
+ * N者間マージでは同じ要素に触れた全バージョンの差分を保持する。
+ * 表示用の文字列は {@link #toString()} で必要になったときにだけ組み立てる。
+ */
+public class Conflict {
+
+    public enum Type {
+        CONFLICT,            // A と B が同じ要素に異なる変更を加えた
+        POTENTIAL_DUPLICATE, // A と B が同じと思われるクラスをそれぞれ追加した
+        N_WAY_CONFLICT       // 複数のバージョンのうち、少なくとも2つが同じ要素に異なる変更を加えた
+    }
+
+    public final Type type;
+    public final String elementId; // CONFLICT: 差分の要素ID / POTENTIAL_DUPLICATE: A側のクラスID
+
+    // CONFLICT のときだけ使う
+    public final Diff diffA;
+    public final Diff diffB;
+
+    // POTENTIAL_DUPLICATE のときだけ使う
+    public final UmlClass classA;
+    public final UmlClass classB;
+
+    // N_WAY_CONFLICT のときだけ使う（同じ位置の要素が対応し、バージョンの順に並ぶ）
+    public final List<String> versionNames;
+    public final List<Diff> versionDiffs;
+
+    private Conflict(Type type, String elementId, Diff diffA, Diff diffB, UmlClass classA, UmlClass classB) {
+        this(type, elementId, diffA, diffB, classA, classB, null, null);
+    }
+
+    private Conflict(Type type, String elementId, Diff diffA, Diff diffB, UmlClass classA, UmlClass classB,
+                     List<String> versionNames, List<Diff> versionDiffs) {
+        this.type = type;
+        this.elementId = elementId;
+        this.diffA = diffA;
+        this.diffB = diffB;
+        this.classA = classA;
+        this.classB = classB;
+        this.versionNames = versionNames;
+        this.versionDiffs = versionDiffs;
+    }
+
+    /** A と B の差分が同じ要素に対して食い違っている */
+    public static Conflict between(Diff diffA, Diff diffB) {
+        return new Conflict(Type.CONFLICT, diffA.elementId, diffA, diffB, null, null);
+    }
+
+    /** A と B のクラスが重複追加の可能性がある */
+    public static Conflict potentialDuplicate(UmlClass classA, UmlClass classB) {
+        return new Conflict(Type.POTENTIAL_DUPLICATE, classA.id, null, null, classA, classB);
+    }
+
+    /**
+     * 複数のバージョンの差分が同じ要素に対して食い違っている。
+     * @param versionNames 差分ごとのバージョン名
+     * @param versionDiffs 同じ要素に触れた全バージョンの差分（食い違っていないものも含む）
+     */
+    public static Conflict acrossVersions(List<String> versionNames, List<Diff> versionDiffs) {
+        return new Conflict(Type.N_WAY_CONFLICT, versionDiffs.get(0).elementId, null, null, null, null,
+            List.copyOf(versionNames), List.copyOf(versionDiffs));
+    }
+
+    @Override
+    public String toString() {
+        if (type == Type.N_WAY_CONFLICT) {
+            StringBuilder changes = new StringBuilder();
+            for (int i = 0; i < versionDiffs.size(); i++) {
+                if (i > 0) {
+                    changes.append(", ");
+                }
+                changes.append(versionNames.get(i)).append(" ('").append(versionDiffs.get(i).getDescription()).append("')");
+            }
+            return String.format("[CONFLICT] Element ID (%s): Conflicting changes across versions: %s", elementId, changes);
+        }
+        if (type == Type.POTENTIAL_DUPLICATE) {
+            return String.format(
+                "[POTENTIAL DUPLICATE] Matched pair found: Class '%s' in A and class '%s' in B may be duplicate additions.",
+                classA.name, classB.name);
+        }
+        return String.format(
+            "[CONFLICT] Element ID (%s): Change in A ('%s') conflicts with change in B ('%s')",
+            elementId, diffA.getDescription(), diffB.getDescription());
+    }
+}
@@ -2,58 +2,190 @@ package diff;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 
 import matching.Matcher;
+import metrics.Tracer;
 import model.UmlClass;
 import model.UmlDiagram;
 
 /**
  * 2つの差分リスト（例：base vs A と base vs B）を比較し、
  * 変更の競合（コンフリクト）を検出するクラス。
+ * インスタンスは状態を持たないので、複数のスレッドから同時に使ってよい（sink は呼び出しごとに用意すること）。
  */
 public class ConflictDetector {
 
+    private final Tracer tracer;
+
+    public ConflictDetector() {
+        this(Tracer.NOOP);
+    }
+
+    /**
+     * @param tracer 計測・詳細ログの出力先
+     */
+    public ConflictDetector(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
     /**
      * 【3者間マージ用】2つの差分リストを受け取り、競合している差分のリストを返します。
-     * elementId の一致を基準に競合を判断します。
+     * 競合は {@link #detectConflicts(List, List, ConflictSink)} と同じ基準で判断し、表示用の文字列に変換して返す。
      * @param diffsA 比較元Aの差分リスト
      * @param diffsB 比較元Bの差分リスト
      * @return 競合内容を説明する文字列のリスト
      */
     public List<String> detectConflicts(List<Diff> diffsA, List<Diff> diffsB) {
-
         List<String> conflicts = new ArrayList<>();
-        System.out.println("\n--- Running 3-Way Conflict Detector ---");
+        detectConflicts(diffsA, diffsB, ConflictSink.toMessages(conflicts));
+        return conflicts;
+    }
+
+    /**
+     * 【3者間マージ用】2つの差分リストを比較し、見つけた競合を順に sink へ渡します。
+     * Bの差分を (要素の種類, 要素ID, 属性または関係の端点) で索引化し、Aの差分ごとに同じ部分要素に
+     * 触れるBの差分とだけ比較する。同じクラスの別々の属性への変更は競合としない。
+     * @param diffsA 比較元Aの差分リスト
+     * @param diffsB 比較元Bの差分リスト
+     * @param sink 競合の出力先
+     * @return 見つけた競合の件数
+     */
+    public int detectConflicts(List<Diff> diffsA, List<Diff> diffsB, ConflictSink sink) {
+        try (Tracer.Span span = tracer.startPhase(Tracer.Phase.CONFLICT)) {
+            int count = detectConflictsInternal(diffsA, diffsB, sink);
+            span.setItems(count);
+            return count;
+        }
+    }
+
+    private int detectConflictsInternal(List<Diff> diffsA, List<Diff> diffsB, ConflictSink sink) {
+        tracer.verbose("\n--- Running 3-Way Conflict Detector ---");
 
-        Map<String, List<Diff>> diffsBMap = new HashMap<>();
+        Map<ConflictKey, List<Diff>> diffsBIndex = new HashMap<>();
         for (Diff diffB : diffsB) {
-            diffsBMap.computeIfAbsent(diffB.elementId, k -> new ArrayList<>()).add(diffB);
+            ConflictKey key = ConflictKey.of(diffB);
+            if (key != null) {
+                diffsBIndex.computeIfAbsent(key, k -> new ArrayList<>()).add(diffB);
+            }
         }
 
+        int count = 0;
         for (Diff diffA : diffsA) {
-            if (diffsBMap.containsKey(diffA.elementId)) {
-
-                for (Diff diffB : diffsBMap.get(diffA.elementId)) {
-                    if (isConflicting(diffA, diffB)) {
-                        String conflictMessage = String.format(
-                            "[CONFLICT] Element ID (%s): Change in A ('%s') conflicts with change in B ('%s')",
-                            diffA.elementId, diffA.description, diffB.description
-                        );
-                        conflicts.add(conflictMessage);
-                        System.out.println("Conflict found: " + conflictMessage);
+            ConflictKey key = ConflictKey.of(diffA);
+            List<Diff> candidates = key == null ? null : diffsBIndex.get(key);
+            if (candidates == null) {
+                continue;
+            }
+            for (Diff diffB : candidates) {
+                if (isConflicting(diffA, diffB)) {
+                    Conflict conflict = Conflict.between(diffA, diffB);
+                    sink.accept(conflict);
+                    count++;
+                    if (tracer.isVerbose()) {
+                        tracer.verbose("Conflict found: " + conflict);
                     }
                 }
             }
         }
 
-        if (conflicts.isEmpty()) {
-            System.out.println("No conflicts found based on Element ID.");
+        if (count == 0) {
+            tracer.verbose("No conflicts found.");
         }
 
-        return conflicts;
+        return count;
+    }
+
+    /**
+     * 【N者間マージ用】同じbaseに対する複数のバージョンの差分リストを一度に比較し、見つけた競合を順に sink へ渡します。
+     * 全バージョンの差分を {@link #detectConflicts(List, List, ConflictSink)} と同じキーで1回の走査でまとめ、
+     * 異なる2つ以上のバージョンが異なる変更を加えたキーごとに、そのキーに触れた全バージョンの差分を1件の競合として報告する。
+     * バージョンの組ごとに比較するのと違い、バージョン数の2乗ではなく差分の総数に比例する時間で済む。
+     * @param versionNames バージョン名（diffsPerVersion と同じ順）
+     * @param diffsPerVersion バージョンごとの差分リスト
+     * @param sink 競合の出力先
+     * @return 見つけた競合の件数
+     */
+    public int detectConflictsAcrossVersions(List<String> versionNames, List<List<Diff>> diffsPerVersion, ConflictSink sink) {
+        if (versionNames.size() != diffsPerVersion.size()) {
+            throw new IllegalArgumentException("versionNames and diffsPerVersion must have the same size");
+        }
+        try (Tracer.Span span = tracer.startPhase(Tracer.Phase.CONFLICT)) {
+            int count = detectConflictsAcrossVersionsInternal(versionNames, diffsPerVersion, sink);
+            span.setItems(count);
+            return count;
+        }
+    }
+
+    private int detectConflictsAcrossVersionsInternal(List<String> versionNames, List<List<Diff>> diffsPerVersion, ConflictSink sink) {
+        tracer.verbose("\n--- Running N-Way Conflict Detector (" + diffsPerVersion.size() + " versions) ---");
+
+        // 最初に現れた順にキーを並べ、出力を決定的にする
+        Map<ConflictKey, KeyGroup> groups = new LinkedHashMap<>();
+        for (int v = 0; v < diffsPerVersion.size(); v++) {
+            for (Diff diff : diffsPerVersion.get(v)) {
+                ConflictKey key = ConflictKey.of(diff);
+                if (key != null) {
+                    groups.computeIfAbsent(key, k -> new KeyGroup()).add(v, diff);
+                }
+            }
+        }
+
+        int count = 0;
+        for (KeyGroup group : groups.values()) {
+            if (!group.isConflicting()) {
+                continue;
+            }
+            List<String> names = new ArrayList<>(group.versions.size());
+            for (int v : group.versions) {
+                names.add(versionNames.get(v));
+            }
+            Conflict conflict = Conflict.acrossVersions(names, group.diffs);
+            sink.accept(conflict);
+            count++;
+            if (tracer.isVerbose()) {
+                tracer.verbose("Conflict found: " + conflict);
+            }
+        }
+
+        if (count == 0) {
+            tracer.verbose("No conflicts found.");
+        }
+
+        return count;
+    }
+
+    /**
+     * N者間マージで、同じキーに触れた差分とそのバージョン番号。
+     */
+    private static final class KeyGroup {
+        final List<Integer> versions = new ArrayList<>(2);
+        final List<Diff> diffs = new ArrayList<>(2);
+
+        void add(int version, Diff diff) {
+            versions.add(version);
+            diffs.add(diff);
+        }
+
+        /**
+         * 異なるバージョンの差分で、同じ変更でない組があるかを返す。
+         * 変更が2種類以上あり、かつ2つ以上のバージョンが関わっていれば、必ずそのような組が存在する。
+         */
+        boolean isConflicting() {
+            if (diffs.size() < 2 || new HashSet<>(versions).size() < 2) {
+                return false;
+            }
+            Diff first = diffs.get(0);
+            for (int i = 1; i < diffs.size(); i++) {
+                if (!first.isSameChange(diffs.get(i))) {
+                    return true;
+                }
+            }
+            return false;
+        }
     }
 
     /**
@@ -67,39 +199,55 @@ public class ConflictDetector {
      */
     public List<String> detectConflictsInTwoWayMerge(UmlDiagram diagramA, UmlDiagram diagramB, Matcher matcher) {
         List<String> conflicts = new ArrayList<>();
-        System.out.println("\n--- Running 2-Way Potential Duplicate Detector ---");
+        detectConflictsInTwoWayMerge(diagramA, diagramB, matcher, ConflictSink.toMessages(conflicts));
+        return conflicts;
+    }
 
+    /**
+     * 【2者間マージ用】重複追加の可能性があるクラスの組を、見つけた順に sink へ渡します。
+     * @param diagramA バージョンAのダイアグラム
+     * @param diagramB バージョンBのダイアグラム
+     * @param matcher 類似性マッチングを行うためのMatcherオブジェクト
+     * @param sink 競合の出力先
+     * @return 見つけた重複追加の可能性の件数
+     */
+    public int detectConflictsInTwoWayMerge(UmlDiagram diagramA, UmlDiagram diagramB, Matcher matcher, ConflictSink sink) {
         // Matcherを使って、AとBの間で意味的に類似するクラスのペアを見つける
+        // （マッチング自体はMatcher側でMATCHフェーズとして計測される）
         Map<UmlClass, UmlClass> matchedClasses = matcher.match(diagramA, diagramB);
 
-        for (Map.Entry<UmlClass, UmlClass> entry : matchedClasses.entrySet()) {
-            UmlClass classA = entry.getKey();
-            UmlClass classB = entry.getValue();
+        try (Tracer.Span span = tracer.startPhase(Tracer.Phase.CONFLICT)) {
+            int count = detectPotentialDuplicates(matchedClasses, sink);
+            span.setItems(count);
+            return count;
+        }
+    }
 
+    private int detectPotentialDuplicates(Map<UmlClass, UmlClass> matchedClasses, ConflictSink sink) {
+        tracer.verbose("\n--- Running 2-Way Potential Duplicate Detector ---");
+
+        int count = 0;
+        for (Map.Entry<UmlClass, UmlClass> entry : matchedClasses.entrySet()) {
             // ★ 用語を「競合」から「重複追加の可能性」に変更
-            String conflictMessage = String.format(
-                "[POTENTIAL DUPLICATE] Matched pair found: Class '%s' in A and class '%s' in B may be duplicate additions.",
-                classA.name, classB.name
-            );
-            conflicts.add(conflictMessage);
-            System.out.println("Potential duplicate found: " + conflictMessage);
+            Conflict conflict = Conflict.potentialDuplicate(entry.getKey(), entry.getValue());
+            sink.accept(conflict);
+            count++;
+            if (tracer.isVerbose()) {
+                tracer.verbose("Potential duplicate found: " + conflict);
+            }
         }
 
-        if (conflicts.isEmpty()) {
-            System.out.println("No potential duplicate additions found.");
+        if (count == 0) {
+            tracer.verbose("No potential duplicate additions found.");
         }
 
-        return conflicts;
+        return count;
     }
 
 
     private boolean isConflicting(Diff diffA, Diff diffB) {
-        if (diffA.elementType != diffB.elementType) {
-            return false;
-        }
-        if (Objects.equals(diffA.description, diffB.description)) {
-            return false;
-        }
-        return true;
+        // 索引のキーが同じなので要素の種類は一致している。同じ変更でなければ競合とする
+        // （説明文ではなく型付きの変更内容で比較するので、クラス名が異なるだけの同じ変更は競合としない）
+        return !diffA.isSameChange(diffB);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,81 @@
+package diff;
+
+import java.util.Objects;
+
+/**
+ * 3者間マージの競合検出で、同じ部分要素に触れる差分を突き合わせるためのキー。
+ * (要素の種類, 要素ID, 部分要素) の組で、部分要素は属性なら属性名、関係なら端点を表す。
+ *
+ * <ul>
+ *   <li>CLASS: (CLASS, baseのクラスID, なし)</li>
+ *   <li>ATTRIBUTE: (ATTRIBUTE, baseのクラスID, 属性名)</li>
+ *   <li>RELATIONSHIP: (RELATIONSHIP, なし, baseのクラスIDで表した端点)。
+ *       追加された関係のIDはバージョンごとに異なるので、IDではなく端点で突き合わせる。
+ *       端点にバージョン側にしかないクラスを含む関係は、そのIDがバージョンごとに別々に振られるので対象外</li>
+ * </ul>
+ */
+final class ConflictKey {
+
+    private final Diff.ElementType elementType;
+    private final String elementId;
+    private final Object subElement;
+
+    private ConflictKey(Diff.ElementType elementType, String elementId, Object subElement) {
+        this.elementType = elementType;
+        this.elementId = elementId;
+        this.subElement = subElement;
+    }
+
+    /**
+     * 差分に対応するキーを返します。
+     * クラスの追加はbaseに存在しない要素への変更で、IDもバージョンごとに異なるため対象外とし、null を返す。
+     * 同じ理由で、端点のどちらかがバージョン側にしかないクラス（{@link RelationshipKey#ADDED_CLASS_PREFIX} 付きのID）の
+     * 関係も対象外とする。AとBで同じIDでも、別々に追加された無関係なクラスを指していることがあるため。
+     */
+    static ConflictKey of(Diff diff) {
+        switch (diff.elementType) {
+            case CLASS:
+                if (diff.changeType == Diff.ChangeType.ADD) {
+                    return null;
+                }
+                return new ConflictKey(Diff.ElementType.CLASS, diff.elementId, null);
+            case ATTRIBUTE:
+                return new ConflictKey(Diff.ElementType.ATTRIBUTE, diff.elementId, diff.attribute);
+            case RELATIONSHIP:
+                if (isVersionLocal(diff.relationshipKey.sourceClassId) || isVersionLocal(diff.relationshipKey.targetClassId)) {
+                    return null;
+                }
+                return new ConflictKey(Diff.ElementType.RELATIONSHIP, null, diff.relationshipKey.endpoints());
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isVersionLocal(String classId) {
+        return classId.startsWith(RelationshipKey.ADDED_CLASS_PREFIX);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof ConflictKey)) {
+            return false;
+        }
+        ConflictKey other = (ConflictKey) obj;
+        return elementType == other.elementType
+            && Objects.equals(elementId, other.elementId)
+            && Objects.equals(subElement, other.subElement);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(elementType, elementId, subElement);
+    }
+
+    @Override
+    public String toString() {
+        return elementType + "(" + (elementId != null ? elementId : "") + (subElement != null ? ", " + subElement : "") + ")";
+    }
+}
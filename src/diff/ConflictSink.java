@@ -0,0 +1,20 @@
+package diff;
+
+import java.util.List;
+
+/**
+ * ConflictDetector が見つけた競合を、見つけた順に1件ずつ受け取る出力先。
+ */
+@FunctionalInterface
+public interface ConflictSink {
+
+    void accept(Conflict conflict);
+
+    /**
+     * 競合を表示用の文字列に変換してリストに追加する出力先を返します。
+     * @param messages 追加先のリスト
+     */
+    static ConflictSink toMessages(List<String> messages) {
+        return conflict -> messages.add(conflict.toString());
+    }
+}
@@ -1,7 +1,10 @@
 package diff;
 
+import java.util.Objects;
+
 /**
  * 1つの変更（差分）を表すクラス。
+ * 変更内容は型付きのフィールドで保持し、説明文は表示するときにだけ組み立てる。
  */
 public class Diff {
 
@@ -20,18 +23,116 @@ public class Diff {
     public final ChangeType changeType;
     public final ElementType elementType;
     public final String elementId; // 変更があった要素のID
-    public final String description; // 変更内容を説明する文字列
 
-    public Diff(ChangeType changeType, ElementType elementType, String elementId, String description) {
+    // --- 変更内容（要素の種類によって使うフィールドが異なり、使わないものは null） ---
+    public final String oldValue;   // CLASS: 変更前のクラス名 / RELATIONSHIP: 変更前の関係の種類
+    public final String newValue;   // CLASS: 変更後（追加された）クラス名 / RELATIONSHIP: 変更後（追加された）関係の種類
+    public final String attribute;  // ATTRIBUTE: 追加・削除された属性
+    public final String className;  // ATTRIBUTE: 属性を持つクラスの名前（説明文用）
+    public final RelationshipKey relationshipKey; // RELATIONSHIP: baseのクラスIDで表した (始点, 終点, 種類)
+    public final String sourceName; // RELATIONSHIP: 始点クラスの名前（説明文用）
+    public final String targetName; // RELATIONSHIP: 終点クラスの名前（説明文用）
+
+    private Diff(ChangeType changeType, ElementType elementType, String elementId, String oldValue, String newValue,
+                 String attribute, String className, RelationshipKey relationshipKey, String sourceName, String targetName) {
         this.changeType = changeType;
         this.elementType = elementType;
         this.elementId = elementId;
-        this.description = description;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+        this.attribute = attribute;
+        this.className = className;
+        this.relationshipKey = relationshipKey;
+        this.sourceName = sourceName;
+        this.targetName = targetName;
+    }
+
+    /** クラスが追加された */
+    public static Diff classAdded(String classId, String name) {
+        return new Diff(ChangeType.ADD, ElementType.CLASS, classId, null, name, null, null, null, null, null);
+    }
+
+    /** クラス名が変更された */
+    public static Diff classRenamed(String classId, String oldName, String newName) {
+        return new Diff(ChangeType.CHANGE, ElementType.CLASS, classId, oldName, newName, null, null, null, null, null);
+    }
+
+    /** クラスに属性が追加された */
+    public static Diff attributeAdded(String classId, String className, String attribute) {
+        return new Diff(ChangeType.ADD, ElementType.ATTRIBUTE, classId, null, null, attribute, className, null, null, null);
+    }
+
+    /** クラスから属性が削除された */
+    public static Diff attributeDeleted(String classId, String className, String attribute) {
+        return new Diff(ChangeType.DELETE, ElementType.ATTRIBUTE, classId, null, null, attribute, className, null, null, null);
+    }
+
+    /** 関係が追加された */
+    public static Diff relationshipAdded(String relationshipId, RelationshipKey key, String sourceName, String targetName) {
+        return new Diff(ChangeType.ADD, ElementType.RELATIONSHIP, relationshipId, null, key.type, null, null,
+            key, sourceName, targetName);
+    }
+
+    /** 関係が削除された */
+    public static Diff relationshipDeleted(String relationshipId, RelationshipKey key, String sourceName, String targetName) {
+        return new Diff(ChangeType.DELETE, ElementType.RELATIONSHIP, relationshipId, key.type, null, null, null,
+            key, sourceName, targetName);
+    }
+
+    /** 関係の種類が変更された（key の type は変更後の種類） */
+    public static Diff relationshipRetyped(String relationshipId, RelationshipKey key, String oldType,
+                                           String sourceName, String targetName) {
+        return new Diff(ChangeType.CHANGE, ElementType.RELATIONSHIP, relationshipId, oldType, key.type, null, null,
+            key, sourceName, targetName);
+    }
+
+    /**
+     * 2つの差分が同じ変更を表しているかどうかを、説明文ではなく型付きの内容で比較します。
+     */
+    public boolean isSameChange(Diff other) {
+        // 追加された関係のIDはバージョンごとの採番なので比較せず、relationshipKey で比較する
+        boolean versionLocalId = elementType == ElementType.RELATIONSHIP && changeType == ChangeType.ADD;
+        return changeType == other.changeType
+            && elementType == other.elementType
+            && (versionLocalId || Objects.equals(elementId, other.elementId))
+            && Objects.equals(oldValue, other.oldValue)
+            && Objects.equals(newValue, other.newValue)
+            && Objects.equals(attribute, other.attribute)
+            && Objects.equals(relationshipKey, other.relationshipKey);
+    }
+
+    /**
+     * 変更内容を説明する文字列を返します（呼び出されるたびに組み立てる）。
+     */
+    public String getDescription() {
+        switch (elementType) {
+            case CLASS:
+                if (changeType == ChangeType.ADD) {
+                    return "Class '" + newValue + "' added.";
+                }
+                return "Name changed from '" + oldValue + "' to '" + newValue + "'.";
+            case ATTRIBUTE:
+                if (changeType == ChangeType.ADD) {
+                    return "Attribute '" + attribute + "' added to class '" + className + "'.";
+                }
+                return "Attribute '" + attribute + "' deleted from class '" + className + "'.";
+            case RELATIONSHIP:
+                if (changeType == ChangeType.CHANGE) {
+                    return "Relationship type changed from '" + oldValue + "' to '" + newValue + "' between '"
+                        + sourceName + "' and '" + targetName + "'.";
+                }
+                if (changeType == ChangeType.ADD) {
+                    return "Relationship '" + newValue + "' from '" + sourceName + "' to '" + targetName + "' added.";
+                }
+                return "Relationship '" + oldValue + "' from '" + sourceName + "' to '" + targetName + "' deleted.";
+            default:
+                return "";
+        }
     }
 
     @Override
     public String toString() {
         // 例: [CHANGE] CLASS (6): Name changed from 'User' to 'Customer'
-        return "[" + changeType + "] " + elementType + " (" + elementId + "): " + description;
+        return "[" + changeType + "] " + elementType + " (" + elementId + "): " + getDescription();
     }
-}
\ No newline at end of file
+}
@@ -1,67 +1,326 @@
 package diff;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import metrics.Tracer;
+import model.ColumnarDiagram;
+import model.DiagramView;
 import model.UmlClass;
 import model.UmlDiagram;
 
 /**
  * 2つのUmlDiagramを比較し、差分を検出するエンジン。
+ * 比較は {@link DiagramView} の上で行う。UmlDiagramを受け取るメソッドは列指向に変換してから比較する。
+ * インスタンスは状態を持たないので、複数のスレッドから同時に使ってよい。
  */
 public class DiffEngine {
 
+    private final Tracer tracer;
+
+    public DiffEngine() {
+        this(Tracer.NOOP);
+    }
+
+    /**
+     * @param tracer 計測の記録先
+     */
+    public DiffEngine(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
     public List<Diff> diff(UmlDiagram baseDiagram, UmlDiagram versionDiagram, Map<UmlClass, UmlClass> matches) {
-        List<Diff> diffs = new ArrayList<>();
+        ColumnarDiagram base = ColumnarDiagram.of(baseDiagram);
+        ColumnarDiagram version = ColumnarDiagram.of(versionDiagram);
 
+        // マッチング結果をクラス番号の対応に読み替える
+        Map<UmlClass, Integer> versionIndex = new IdentityHashMap<>();
+        int index = 0;
+        for (UmlClass versionClass : versionDiagram.getClasses()) {
+            versionIndex.put(versionClass, index++);
+        }
+        int[] baseToVersion = new int[base.classCount()];
+        index = 0;
         for (UmlClass baseClass : baseDiagram.getClasses()) {
             UmlClass versionClass = matches.get(baseClass);
+            baseToVersion[index++] = versionClass == null ? -1 : versionIndex.get(versionClass);
+        }
+        return diff(base, version, baseToVersion);
+    }
+
+    /**
+     * 2つのダイアグラムの差分を検出します。
+     * @param base 比較元のダイアグラム
+     * @param version 比較先のダイアグラム
+     * @param baseToVersion base の各クラスに対応する version のクラス番号（対応がなければ -1）。
+     *                      {@link matching.Matcher#matchIndices} の結果をそのまま渡せる
+     * @return 差分のリスト
+     */
+    public List<Diff> diff(DiagramView base, DiagramView version, int[] baseToVersion) {
+        List<Diff> diffs = new ArrayList<>();
+        diff(base, version, baseToVersion, DiffSink.toList(diffs));
+        return diffs;
+    }
+
+    /**
+     * 2つのダイアグラムの差分を検出し、見つけた差分を順に sink へ渡します。
+     * 渡す順番は {@link #diff(DiagramView, DiagramView, int[])} が返すリストの順番と同じ。
+     * @param base 比較元のダイアグラム
+     * @param version 比較先のダイアグラム
+     * @param baseToVersion base の各クラスに対応する version のクラス番号（対応がなければ -1）
+     * @param sink 差分の出力先
+     * @return 見つけた差分の件数
+     */
+    public int diff(DiagramView base, DiagramView version, int[] baseToVersion, DiffSink sink) {
+        try (Tracer.Span span = tracer.startPhase(Tracer.Phase.DIFF)) {
+            int[] count = {0};
+            diffInternal(base, version, baseToVersion, diff -> {
+                count[0]++;
+                sink.accept(diff);
+            });
+            span.setItems(count[0]);
+            return count[0];
+        }
+    }
 
-            if (versionClass == null) {
-                continue; 
+    private void diffInternal(DiagramView base, DiagramView version, int[] baseToVersion, DiffSink diffs) {
+        boolean[] matchedVersionClasses = new boolean[version.classCount()];
+        for (int b = 0; b < baseToVersion.length; b++) {
+            int v = baseToVersion[b];
+            if (v < 0) {
+                continue;
+            }
+            matchedVersionClasses[v] = true;
+            if (!base.className(b).equals(version.className(v))) {
+                diffs.accept(Diff.classRenamed(base.classId(b), base.className(b), version.className(v)));
+            }
+            diffAttributes(base, b, version, v, diffs);
+        }
+
+        for (int v = 0; v < matchedVersionClasses.length; v++) {
+            if (!matchedVersionClasses[v]) {
+                diffs.accept(Diff.classAdded(version.classId(v), version.className(v)));
+            }
+        }
+
+        diffRelationships(base, version, baseToVersion, diffs);
+    }
+
+    /**
+     * 関係の差分を検出し、出力先に渡すヘルパーメソッド。
+     * バージョン側の関係の端点（クラス番号）をマッチング結果でbaseのクラス番号に読み替え、(始点, 終点, 種類) をキーに
+     * ハッシュ結合する。一致しなかったものは (始点, 終点) で再度結合し、見つかれば種類の変更、
+     * 残りは追加・削除とする。関係の数に対して線形時間で終わる。
+     * 端点はクラス番号のまま比べ、クラスIDの文字列は出力する差分の {@link RelationshipKey} を作るときだけ使う。
+     */
+    private void diffRelationships(DiagramView base, DiagramView version, int[] baseToVersion, DiffSink diffs) {
+        Endpoints endpoints = new Endpoints(base, version, baseToVersion);
+
+        // 1. baseの関係を (始点, 終点, 種類) で索引化する（同じキーの関係が複数あってもよい）
+        Map<EndpointKey, ArrayDeque<Integer>> baseByKey = new LinkedHashMap<>();
+        for (int r = 0; r < base.relationshipCount(); r++) {
+            EndpointKey key = new EndpointKey(
+                endpoints.ofBase(r, true), endpoints.ofBase(r, false), base.relationshipType(r));
+            baseByKey.computeIfAbsent(key, k -> new ArrayDeque<>()).add(r);
+        }
+
+        // 2. バージョン側の関係を読み替えたキーで突き合わせる。一致したものは変更なし
+        List<Integer> unmatchedVersion = new ArrayList<>();
+        List<EndpointKey> unmatchedVersionKeys = new ArrayList<>();
+        for (int r = 0; r < version.relationshipCount(); r++) {
+            EndpointKey key = new EndpointKey(
+                endpoints.ofVersion(r, true), endpoints.ofVersion(r, false), version.relationshipType(r));
+            ArrayDeque<Integer> candidates = baseByKey.get(key);
+            if (candidates != null && !candidates.isEmpty()) {
+                candidates.poll();
             } else {
-                if (!baseClass.name.equals(versionClass.name)) {
-                    diffs.add(new Diff(Diff.ChangeType.CHANGE, Diff.ElementType.CLASS, baseClass.id, 
-                        "Name changed from '" + baseClass.name + "' to '" + versionClass.name + "'."));
+                unmatchedVersion.add(r);
+                unmatchedVersionKeys.add(key);
+            }
+        }
+
+        // 3. 残ったbaseの関係を端点だけで索引化し、種類の変更を探す
+        Map<Long, ArrayDeque<Integer>> remainingByEndpoints = new LinkedHashMap<>();
+        for (Map.Entry<EndpointKey, ArrayDeque<Integer>> entry : baseByKey.entrySet()) {
+            for (Integer baseRel : entry.getValue()) {
+                remainingByEndpoints.computeIfAbsent(entry.getKey().endpoints, k -> new ArrayDeque<>()).add(baseRel);
+            }
+        }
+        for (int i = 0; i < unmatchedVersion.size(); i++) {
+            int versionRel = unmatchedVersion.get(i);
+            EndpointKey versionKey = unmatchedVersionKeys.get(i);
+            ArrayDeque<Integer> candidates = remainingByEndpoints.get(versionKey.endpoints);
+            Integer baseRel = candidates == null ? null : candidates.poll();
+            if (baseRel != null) {
+                RelationshipKey key = endpoints.toKey(versionKey.endpoints, version.relationshipType(versionRel));
+                diffs.accept(Diff.relationshipRetyped(base.relationshipId(baseRel), key, base.relationshipType(baseRel),
+                    className(base, base.relationshipSource(baseRel), key.sourceClassId),
+                    className(base, base.relationshipTarget(baseRel), key.targetClassId)));
+            } else {
+                diffs.accept(Diff.relationshipAdded(version.relationshipId(versionRel),
+                    endpoints.toKey(versionKey.endpoints, versionKey.type),
+                    className(version, version.relationshipSource(versionRel), version.relationshipSourceId(versionRel)),
+                    className(version, version.relationshipTarget(versionRel), version.relationshipTargetId(versionRel))));
+            }
+        }
+
+        // 4. 最後まで残ったbaseの関係は削除
+        for (Map.Entry<Long, ArrayDeque<Integer>> entry : remainingByEndpoints.entrySet()) {
+            for (int baseRel : entry.getValue()) {
+                RelationshipKey key = endpoints.toKey(entry.getKey(), base.relationshipType(baseRel));
+                diffs.accept(Diff.relationshipDeleted(base.relationshipId(baseRel), key,
+                    className(base, base.relationshipSource(baseRel), key.sourceClassId),
+                    className(base, base.relationshipTarget(baseRel), key.targetClassId)));
+            }
+        }
+    }
+
+    /**
+     * クラス番号 c のクラス名。端点のクラスがない（c が -1 の）ときは書かれていたクラスIDを返す。
+     */
+    private static String className(DiagramView diagram, int c, String classId) {
+        return c >= 0 ? diagram.className(c) : classId;
+    }
+
+    /**
+     * 関係の端点を、baseのクラス番号で表した1つの int（端点番号）に読み替える。
+     * <ul>
+     *   <li>baseのクラス、およびbaseとマッチしたバージョン側のクラス: baseのクラス番号</li>
+     *   <li>baseとマッチしなかったバージョン側のクラス: base のクラス数 + バージョン側のクラス番号</li>
+     *   <li>クラスのない端点: その後ろに、RelationshipKey で使うID（バージョン側は接頭辞付き）ごとに1つ</li>
+     * </ul>
+     */
+    private static final class Endpoints {
+        private final DiagramView base;
+        private final DiagramView version;
+        private final int[] versionToBase;
+        private final Map<String, Integer> danglingCodes = new HashMap<>(); // クラスのない端点はまれなので、文字列で引く
+        private final List<String> danglingIds = new ArrayList<>();
+
+        Endpoints(DiagramView base, DiagramView version, int[] baseToVersion) {
+            this.base = base;
+            this.version = version;
+            this.versionToBase = new int[version.classCount()];
+            Arrays.fill(versionToBase, -1);
+            for (int b = 0; b < baseToVersion.length; b++) {
+                if (baseToVersion[b] >= 0) {
+                    versionToBase[baseToVersion[b]] = b;
                 }
-                diffAttributes(baseClass, versionClass, diffs);
             }
         }
-        
-        Set<UmlClass> matchedVersionClasses = new HashSet<>(matches.values());
-        for (UmlClass versionClass : versionDiagram.getClasses()) {
-            if (!matchedVersionClasses.contains(versionClass)) {
-                diffs.add(new Diff(Diff.ChangeType.ADD, Diff.ElementType.CLASS, versionClass.id, 
-                    "Class '" + versionClass.name + "' added."));
+
+        int ofBase(int r, boolean source) {
+            int c = source ? base.relationshipSource(r) : base.relationshipTarget(r);
+            if (c >= 0) {
+                return c;
             }
+            return dangling(source ? base.relationshipSourceId(r) : base.relationshipTargetId(r));
+        }
+
+        int ofVersion(int r, boolean source) {
+            int v = source ? version.relationshipSource(r) : version.relationshipTarget(r);
+            if (v >= 0) {
+                return versionToBase[v] >= 0 ? versionToBase[v] : base.classCount() + v;
+            }
+            return dangling(RelationshipKey.ADDED_CLASS_PREFIX
+                + (source ? version.relationshipSourceId(r) : version.relationshipTargetId(r)));
+        }
+
+        private int dangling(String id) {
+            return danglingCodes.computeIfAbsent(id, key -> {
+                danglingIds.add(key);
+                return base.classCount() + version.classCount() + danglingIds.size() - 1;
+            });
+        }
+
+        /**
+         * 端点番号の組を、出力用のクラスIDで表した RelationshipKey にします。
+         */
+        RelationshipKey toKey(long endpoints, String type) {
+            return new RelationshipKey(idOf((int) (endpoints >>> 32)), idOf((int) endpoints), type);
+        }
+
+        private String idOf(int code) {
+            if (code < base.classCount()) {
+                return base.classId(code);
+            }
+            code -= base.classCount();
+            if (code < version.classCount()) {
+                return RelationshipKey.ADDED_CLASS_PREFIX + version.classId(code);
+            }
+            return danglingIds.get(code - version.classCount());
+        }
+    }
+
+    /**
+     * 端点番号で表した関係のキー（始点, 終点, 種類）。
+     */
+    private static final class EndpointKey {
+        final long endpoints; // 上位32ビットが始点、下位32ビットが終点の端点番号
+        final String type;
+
+        EndpointKey(int source, int target, String type) {
+            this.endpoints = ((long) source << 32) | (target & 0xFFFFFFFFL);
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof EndpointKey)) {
+                return false;
+            }
+            EndpointKey other = (EndpointKey) obj;
+            return endpoints == other.endpoints && type.equals(other.type);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(endpoints) * 31 + type.hashCode();
         }
-        
-        return diffs;
     }
     
     /**
-     * 2つのクラス間で属性の差分を検出し、リストに追加するヘルパーメソッド。
+     * 2つのクラス間で属性の差分を検出し、出力先に渡すヘルパーメソッド。
      */
-    private void diffAttributes(UmlClass baseClass, UmlClass versionClass, List<Diff> diffs) {
+    private void diffAttributes(DiagramView base, int baseClass, DiagramView version, int versionClass, DiffSink diffs) {
+        Set<String> baseAttrs = attributeSet(base, baseClass);
+        Set<String> versionAttrs = attributeSet(version, versionClass);
+
         // 追加された属性を検出
-        Set<String> addedAttrs = new HashSet<>(versionClass.attributes);
-        addedAttrs.removeAll(baseClass.attributes);
+        Set<String> addedAttrs = new HashSet<>(versionAttrs);
+        addedAttrs.removeAll(baseAttrs);
         for (String attr : addedAttrs) {
             // ★★★ 変更点 ★★★
             // versionClass.id ではなく baseClass.id を使うように統一する
-            diffs.add(new Diff(Diff.ChangeType.ADD, Diff.ElementType.ATTRIBUTE, baseClass.id, 
-                "Attribute '" + attr + "' added to class '" + versionClass.name + "'."));
+            diffs.accept(Diff.attributeAdded(base.classId(baseClass), version.className(versionClass), attr));
         }
         
         // 削除された属性を検出
-        Set<String> deletedAttrs = new HashSet<>(baseClass.attributes);
-        deletedAttrs.removeAll(versionClass.attributes);
+        Set<String> deletedAttrs = new HashSet<>(baseAttrs);
+        deletedAttrs.removeAll(versionAttrs);
         for (String attr : deletedAttrs) {
-            diffs.add(new Diff(Diff.ChangeType.DELETE, Diff.ElementType.ATTRIBUTE, baseClass.id,
-                "Attribute '" + attr + "' deleted from class '" + baseClass.name + "'."));
+            diffs.accept(Diff.attributeDeleted(base.classId(baseClass), base.className(baseClass), attr));
+        }
+    }
+
+    private static Set<String> attributeSet(DiagramView view, int c) {
+        int start = view.attributeStart(c);
+        int end = view.attributeEnd(c);
+        List<String> attributes = new ArrayList<>(end - start);
+        for (int p = start; p < end; p++) {
+            attributes.add(view.attribute(p));
         }
+        return new HashSet<>(attributes);
     }
 }
\ No newline at end of file
@@ -0,0 +1,20 @@
+package diff;
+
+import java.util.List;
+
+/**
+ * DiffEngine が検出した差分を、検出した順に1件ずつ受け取る出力先。
+ */
+@FunctionalInterface
+public interface DiffSink {
+
+    void accept(Diff diff);
+
+    /**
+     * 差分をリストに追加する出力先を返します。
+     * @param diffs 追加先のリスト
+     */
+    static DiffSink toList(List<Diff> diffs) {
+        return diffs::add;
+    }
+}
@@ -0,0 +1,53 @@
+package diff;
+
+import java.util.Objects;
+
+/**
+ * baseダイアグラムのクラスIDで表した関係の識別キー（始点, 終点, 種類）。
+ * バージョン側にしかない（baseとマッチしなかった）クラスは、IDの先頭に {@link #ADDED_CLASS_PREFIX} を付けて表す。
+ * 種類を問わず端点だけで比較したい場合は type を null にする。
+ */
+public final class RelationshipKey {
+
+    /** baseとマッチしなかったバージョン側のクラスIDに付ける接頭辞 */
+    public static final String ADDED_CLASS_PREFIX = "+";
+
+    public final String sourceClassId;
+    public final String targetClassId;
+    public final String type;
+
+    public RelationshipKey(String sourceClassId, String targetClassId, String type) {
+        this.sourceClassId = sourceClassId;
+        this.targetClassId = targetClassId;
+        this.type = type;
+    }
+
+    /** 種類を除いた、端点だけのキーを返します。 */
+    public RelationshipKey endpoints() {
+        return type == null ? this : new RelationshipKey(sourceClassId, targetClassId, null);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof RelationshipKey)) {
+            return false;
+        }
+        RelationshipKey other = (RelationshipKey) obj;
+        return sourceClassId.equals(other.sourceClassId)
+            && targetClassId.equals(other.targetClassId)
+            && Objects.equals(type, other.type);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sourceClassId, targetClassId, type);
+    }
+
+    @Override
+    public String toString() {
+        return sourceClassId + " -> " + targetClassId + (type == null ? "" : " (" + type + ")");
+    }
+}
@@ -0,0 +1,14 @@
+package matching;
+
+/**
+ * CandidateGraph上で、各行（Aのクラス）に高々1つの列（Bのクラス）を割り当てる戦略。
+ */
+public interface AssignmentSolver {
+
+    /**
+     * 割り当てを計算します。
+     * @param graph 候補となる辺だけを持つコスト行列
+     * @return 行ごとに割り当てた列のインデックス。割り当てなしの行は -1
+     */
+    int[] solve(CandidateGraph graph);
+}
@@ -0,0 +1,142 @@
+package matching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import model.Levenshtein;
+
+/**
+ * 2つのダイアグラムに現れる属性文字列を整数IDに置き換えて管理する語彙表。
+ * 属性ペアごとのレーベンシュタイン距離は一度だけ計算し、以降は表引きで返します。
+ *
+ * 実際のクラス図では「モデルID」「識別番号」「数量」のように同じ属性名が多くのクラスで
+ * 使い回されるため、クラスのペアごとに属性の距離を計算し直すよりはるかに安く済む。
+ */
+public class AttributeVocabulary {
+
+    // 語彙数がこの値以下なら三角行列（int配列）に、超えたらハッシュ表にキャッシュする
+    private static final int DENSE_LIMIT = 2048;
+
+    private static final int NOT_COMPUTED = -1;
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+    private final int cutoff;
+
+    private volatile int[] denseCache;
+    private volatile Map<Long, Integer> sparseCache;
+    private final LongAdder computedDistances = new LongAdder();
+
+    /**
+     * @param cutoff 距離計算の上限。これを超える距離は cutoff + 1 として記録する
+     */
+    public AttributeVocabulary(int cutoff) {
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * 属性文字列を登録し、そのIDを返します。登録済みの文字列には同じIDを返す。
+     * 距離の問い合わせを始めた後に新しい文字列を登録してはならない。
+     */
+    public int intern(String attribute) {
+        Integer id = ids.get(attribute);
+        if (id == null) {
+            if (denseCache != null || sparseCache != null) {
+                throw new IllegalStateException("vocabulary is frozen after the first distance lookup");
+            }
+            id = strings.size();
+            ids.put(attribute, id);
+            strings.add(attribute);
+        }
+        return id;
+    }
+
+    /**
+     * 属性の集合をIDの配列に変換します。
+     */
+    public int[] internAll(Collection<String> attributes) {
+        int[] result = new int[attributes.size()];
+        int i = 0;
+        for (String attribute : attributes) {
+            result[i++] = intern(attribute);
+        }
+        return result;
+    }
+
+    public String get(int id) {
+        return strings.get(id);
+    }
+
+    public int length(int id) {
+        return strings.get(id).length();
+    }
+
+    public int size() {
+        return strings.size();
+    }
+
+    /**
+     * 2つの属性ID間のレーベンシュタイン距離（上限付き）を返します。
+     * 初回の問い合わせ時にだけ計算し、結果をキャッシュする。複数スレッドから呼び出してよい。
+     */
+    public int distance(int a, int b) {
+        if (a == b) {
+            return 0;
+        }
+        if (a < b) {
+            int tmp = a;
+            a = b;
+            b = tmp;
+        }
+        int[] dense = denseCache();
+        if (dense != null) {
+            int index = a * (a - 1) / 2 + b;
+            int cached = dense[index];
+            if (cached == NOT_COMPUTED) {
+                // 同じ値を書き込むだけなので、複数スレッドで競合しても結果は変わらない
+                cached = Levenshtein.distance(strings.get(a), strings.get(b), cutoff);
+                dense[index] = cached;
+                computedDistances.increment();
+            }
+            return cached;
+        }
+        final int first = a;
+        final int second = b;
+        return sparseCache.computeIfAbsent(((long) first << 32) | second,
+            k -> {
+                computedDistances.increment();
+                return Levenshtein.distance(strings.get(first), strings.get(second), cutoff);
+            });
+    }
+
+    /**
+     * これまでに実際に計算した（キャッシュになかった）距離の数を返します。
+     */
+    public long computedDistances() {
+        return computedDistances.sum();
+    }
+
+    private int[] denseCache() {
+        if (denseCache == null && sparseCache == null) {
+            synchronized (this) {
+                if (denseCache == null && sparseCache == null) {
+                    int size = strings.size();
+                    if (size <= DENSE_LIMIT) {
+                        int[] cache = new int[size * (size - 1) / 2];
+                        Arrays.fill(cache, NOT_COMPUTED);
+                        denseCache = cache;
+                    } else {
+                        sparseCache = new ConcurrentHashMap<>();
+                    }
+                }
+            }
+        }
+        return denseCache;
+    }
+}
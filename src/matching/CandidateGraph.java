@@ -0,0 +1,98 @@
+package matching;
+
+import java.util.Arrays;
+
+/**
+ * マッチング候補となるクラスのペア（閾値未満の距離を持つ辺）だけを保持する疎なコスト行列。
+ * 行がダイアグラムAのクラス、列がダイアグラムBのクラスに対応し、行ごとの辺をCSR形式で持つ。
+ */
+public class CandidateGraph {
+
+    private final int rowCount;
+    private final int columnCount;
+    private final int[] rowStart;
+    private final int[] edgeColumn;
+    private final double[] edgeCost;
+
+    private CandidateGraph(int rowCount, int columnCount, int[] rowStart, int[] edgeColumn, double[] edgeCost) {
+        this.rowCount = rowCount;
+        this.columnCount = columnCount;
+        this.rowStart = rowStart;
+        this.edgeColumn = edgeColumn;
+        this.edgeCost = edgeCost;
+    }
+
+    public int rowCount() {
+        return rowCount;
+    }
+
+    public int columnCount() {
+        return columnCount;
+    }
+
+    /** 行 row の最初の辺のインデックス */
+    public int edgeStart(int row) {
+        return rowStart[row];
+    }
+
+    /** 行 row の最後の辺の次のインデックス */
+    public int edgeEnd(int row) {
+        return rowStart[row + 1];
+    }
+
+    public int edgeColumn(int edge) {
+        return edgeColumn[edge];
+    }
+
+    public double edgeCost(int edge) {
+        return edgeCost[edge];
+    }
+
+    public int edgeCount() {
+        return edgeColumn.length;
+    }
+
+    /**
+     * 行ごとに辺を追加しながらCandidateGraphを組み立てるビルダー。
+     * 行は 0 から順番に {@link #startRow()} で開始すること。
+     */
+    public static class Builder {
+        private final int rowCount;
+        private final int columnCount;
+        private final int[] rowStart;
+        private int[] edgeColumn = new int[16];
+        private double[] edgeCost = new double[16];
+        private int size = 0;
+        private int currentRow = -1;
+
+        public Builder(int rowCount, int columnCount) {
+            this.rowCount = rowCount;
+            this.columnCount = columnCount;
+            this.rowStart = new int[rowCount + 1];
+        }
+
+        public void startRow() {
+            currentRow++;
+            rowStart[currentRow] = size;
+        }
+
+        public void addEdge(int column, double cost) {
+            if (size == edgeColumn.length) {
+                edgeColumn = Arrays.copyOf(edgeColumn, size * 2);
+                edgeCost = Arrays.copyOf(edgeCost, size * 2);
+            }
+            edgeColumn[size] = column;
+            edgeCost[size] = cost;
+            size++;
+        }
+
+        public CandidateGraph build() {
+            while (currentRow < rowCount - 1) {
+                startRow();
+            }
+            rowStart[rowCount] = size;
+            return new CandidateGraph(rowCount, columnCount, rowStart,
+                Arrays.copyOf(edgeColumn, size), Arrays.copyOf(edgeCost, size));
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package matching;
+
+import java.util.Arrays;
+
+/**
+ * 従来どおりの貪欲な割り当て。
+ * 行を順番に見て、まだ割り当てられていない列の中で最もコストの小さいものを確定させる。
+ * 高速だが、結果は行の順番に依存し、先に確定したペアが後の行のより良い相手を奪うことがある。
+ */
+public class GreedyAssignment implements AssignmentSolver {
+
+    @Override
+    public int[] solve(CandidateGraph graph) {
+        int[] assignment = new int[graph.rowCount()];
+        Arrays.fill(assignment, -1);
+        boolean[] taken = new boolean[graph.columnCount()];
+
+        for (int row = 0; row < graph.rowCount(); row++) {
+            int best = -1;
+            double lowest = Double.MAX_VALUE;
+            for (int e = graph.edgeStart(row); e < graph.edgeEnd(row); e++) {
+                int column = graph.edgeColumn(e);
+                if (!taken[column] && graph.edgeCost(e) < lowest) {
+                    lowest = graph.edgeCost(e);
+                    best = column;
+                }
+            }
+            if (best >= 0) {
+                assignment[row] = best;
+                taken[best] = true;
+            }
+        }
+        return assignment;
+    }
+}
@@ -0,0 +1,205 @@
+package matching;
+
+import java.util.Arrays;
+
+/**
+ * 疎なコスト行列に対する大域最適な割り当て（ハンガリアン法の最短増加路版）。
+ *
+ * 各行にはコスト unmatchedCost の「割り当てなし」用ダミー列を1つずつ用意し、
+ * 「マッチしたペアのコスト + マッチしなかった行数 × unmatchedCost」を最小化する。
+ * 候補の辺はすべて unmatchedCost 未満なので、辺を使うことで総コストが下がる場合だけマッチする。
+ *
+ * 行ごとに、被約コスト（ポテンシャルで補正したコスト）上でDijkstra法を行い、空いている列までの
+ * 最短増加路に沿って割り当てを入れ替える。探索は unmatchedCost 以内の距離で必ず自分のダミー列に
+ * 到達するので、実際に触れるのは閾値内でつながっている近傍の行・列だけになる。
+ */
+public class HungarianAssignment implements AssignmentSolver {
+
+    private final double unmatchedCost;
+
+    /**
+     * @param unmatchedCost 行を割り当てなしにする場合のコスト（通常はマッチングの距離閾値）
+     */
+    public HungarianAssignment(double unmatchedCost) {
+        this.unmatchedCost = unmatchedCost;
+    }
+
+    @Override
+    public int[] solve(CandidateGraph graph) {
+        int n = graph.rowCount();
+        int m = graph.columnCount();
+        int total = m + n; // 列 m + i は行 i 専用のダミー列
+
+        double[] v = new double[total];         // 列のポテンシャル（行のポテンシャルは割り当てから逆算する）
+        int[] rowOfColumn = new int[total];
+        int[] columnOfRow = new int[n];
+        double[] assignedCost = new double[n];
+        Arrays.fill(rowOfColumn, -1);
+        Arrays.fill(columnOfRow, -1);
+
+        double[] dist = new double[total];
+        int[] prevRow = new int[total];
+        double[] prevCost = new double[total];
+        boolean[] scanned = new boolean[total];
+        Arrays.fill(dist, Double.POSITIVE_INFINITY);
+        int[] touched = new int[total];
+        int[] scannedList = new int[total];
+        Heap heap = new Heap();
+
+        for (int root = 0; root < n; root++) {
+            int touchedCount = 0;
+            int scannedCount = 0;
+            heap.clear();
+
+            int row = root;
+            double rowDistance = 0.0;
+            int freeColumn = -1;
+            double shortest = 0.0;
+            while (true) {
+                // 行 row から出る辺を緩和する
+                double u = row == root ? 0.0 : assignedCost[row] - v[columnOfRow[row]];
+                for (int e = graph.edgeStart(row); e <= graph.edgeEnd(row); e++) {
+                    int column;
+                    double cost;
+                    if (e < graph.edgeEnd(row)) {
+                        column = graph.edgeColumn(e);
+                        cost = graph.edgeCost(e);
+                    } else {
+                        column = m + row;
+                        cost = unmatchedCost;
+                    }
+                    if (scanned[column]) {
+                        continue;
+                    }
+                    double candidate = rowDistance + cost - u - v[column];
+                    if (candidate < dist[column]) {
+                        if (dist[column] == Double.POSITIVE_INFINITY) {
+                            touched[touchedCount++] = column;
+                        }
+                        dist[column] = candidate;
+                        prevRow[column] = row;
+                        prevCost[column] = cost;
+                        heap.push(candidate, column);
+                    }
+                }
+
+                // 未確定の列のうち最も近いものを確定させる
+                int column = -1;
+                while (!heap.isEmpty()) {
+                    double key = heap.peekKey();
+                    int c = heap.pop();
+                    if (!scanned[c] && key == dist[c]) {
+                        column = c;
+                        break;
+                    }
+                }
+                scanned[column] = true;
+                scannedList[scannedCount++] = column;
+                if (rowOfColumn[column] < 0) {
+                    freeColumn = column;
+                    shortest = dist[column];
+                    break;
+                }
+                row = rowOfColumn[column];
+                rowDistance = dist[column];
+            }
+
+            // ポテンシャルを更新して、被約コストが非負のまま保たれるようにする
+            for (int i = 0; i < scannedCount; i++) {
+                int column = scannedList[i];
+                v[column] += dist[column] - shortest;
+            }
+
+            // 増加路に沿って割り当てを入れ替える
+            int column = freeColumn;
+            while (true) {
+                int r = prevRow[column];
+                int next = columnOfRow[r];
+                columnOfRow[r] = column;
+                rowOfColumn[column] = r;
+                assignedCost[r] = prevCost[column];
+                if (r == root) {
+                    break;
+                }
+                column = next;
+            }
+
+            for (int i = 0; i < touchedCount; i++) {
+                dist[touched[i]] = Double.POSITIVE_INFINITY;
+                scanned[touched[i]] = false;
+            }
+        }
+
+        int[] assignment = new int[n];
+        for (int r = 0; r < n; r++) {
+            assignment[r] = columnOfRow[r] < m ? columnOfRow[r] : -1;
+        }
+        return assignment;
+    }
+
+    /**
+     * (距離, 列) を持つ二分ヒープ。古くなった要素は取り出し時に読み捨てる。
+     */
+    private static final class Heap {
+        private double[] keys = new double[64];
+        private int[] values = new int[64];
+        private int size = 0;
+
+        void clear() {
+            size = 0;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        double peekKey() {
+            return keys[0];
+        }
+
+        void push(double key, int value) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                keys[i] = keys[parent];
+                values[i] = values[parent];
+                i = parent;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        int pop() {
+            int result = values[0];
+            size--;
+            double key = keys[size];
+            int value = values[size];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                keys[i] = keys[child];
+                values[i] = values[child];
+                i = child;
+            }
+            keys[i] = key;
+            values[i] = value;
+            return result;
+        }
+    }
+}
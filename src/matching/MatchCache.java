@@ -0,0 +1,249 @@
+package matching;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import model.UmlClass;
+
+/**
+ * クラスのペアごとの総合距離を、各クラスの内容ハッシュ（{@link UmlClass#contentHash()}）の組で
+ * 覚えておくキャッシュ。同じダイアグラムに対して繰り返しマッチングを行うとき、内容が変わっていない
+ * クラスのペアは距離を計算し直さずに済む。
+ *
+ * 件数には上限があり、超えた分は最も長く使われていないものから捨てる（LRU）。
+ * 内部はキーのハッシュで分けた複数の区画からなり、区画ごとにロックするので複数スレッドから使ってよい
+ * （LRUの順序も区画ごとに管理する近似になる）。
+ * {@link #save(Path)} でファイルに書き出し、{@link #load(Path, int)} で次の実行時に読み込める。
+ */
+public class MatchCache {
+
+    /** 既定の最大件数（1件あたりおよそ100バイトのヒープを使う） */
+    public static final int DEFAULT_CAPACITY = 1 << 21;
+
+    private static final int MAGIC = 0x43444d43; // "CDMC"
+    private static final int FORMAT_VERSION = 1;
+    private static final int SEGMENT_BITS = 4;
+    private static final int SEGMENT_COUNT = 1 << SEGMENT_BITS;
+
+    private final int capacity;
+    private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param capacity 保持する最大件数
+     */
+    public MatchCache(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        this.capacity = capacity;
+        int segmentCapacity = Math.max(1, (capacity + SEGMENT_COUNT - 1) / SEGMENT_COUNT);
+        for (int i = 0; i < SEGMENT_COUNT; i++) {
+            segments[i] = new Segment(segmentCapacity);
+        }
+    }
+
+    public MatchCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * ファイルからキャッシュを読み込みます。ファイルが存在しない場合や、形式・距離の計算方法
+     * （Matcherの重みや閾値）が保存時と異なる場合は空のキャッシュを返す。
+     * @param file 読み込むファイル
+     * @param capacity 保持する最大件数（ファイルの件数の方が多ければ、古いものから捨てる）
+     * @return 読み込んだキャッシュ
+     */
+    public static MatchCache load(Path file, int capacity) throws IOException {
+        MatchCache cache = new MatchCache(capacity);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION || in.readLong() != Matcher.COST_MODEL_FINGERPRINT) {
+                return cache;
+            }
+            long count = in.readLong();
+            // 使われた順（古い順）に書かれているので、そのまま入れればLRUの順序も復元される
+            for (long i = 0; i < count; i++) {
+                Key key = new Key(in.readLong(), in.readLong());
+                cache.segmentFor(key).put(key, in.readDouble());
+            }
+        } catch (NoSuchFileException e) {
+            return cache;
+        }
+        // 読み込みによる追い出しは統計に含めない
+        cache.evictions.reset();
+        return cache;
+    }
+
+    /**
+     * キャッシュの内容をファイルに書き出します。一時ファイルに書いてから置き換えるので、
+     * 途中で失敗しても既存のファイルは壊れない。
+     * @param file 書き出すファイル
+     */
+    public void save(Path file) throws IOException {
+        List<Key> keys = new ArrayList<>();
+        List<Double> values = new ArrayList<>();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (Map.Entry<Key, Double> entry : segment.entrySet()) {
+                    keys.add(entry.getKey());
+                    values.add(entry.getValue());
+                }
+            }
+        }
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(Matcher.COST_MODEL_FINGERPRINT);
+                out.writeLong(keys.size());
+                for (int i = 0; i < keys.size(); i++) {
+                    out.writeLong(keys.get(i).first);
+                    out.writeLong(keys.get(i).second);
+                    out.writeDouble(values.get(i));
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * 内容ハッシュの組に対応する距離を返します。距離は対称なので、引数の順序は問わない。
+     * @return キャッシュされた距離。なければ NaN
+     */
+    public double get(long hashA, long hashB) {
+        Key key = Key.of(hashA, hashB);
+        Double value;
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value == null) {
+            misses.increment();
+            return Double.NaN;
+        }
+        hits.increment();
+        return value;
+    }
+
+    /**
+     * 内容ハッシュの組に対応する距離を記録します。
+     */
+    public void put(long hashA, long hashB, double distance) {
+        Key key = Key.of(hashA, hashB);
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            segment.put(key, distance);
+        }
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("MatchCache[size=%d, capacity=%d, hits=%d, misses=%d, evictions=%d]",
+            size(), capacity, getHits(), getMisses(), getEvictions());
+    }
+
+    private Segment segmentFor(Key key) {
+        // 区画内の HashMap は下位ビットを使うので、区画の選択には上位ビットを使う
+        return segments[key.hashCode() >>> (Integer.SIZE - SEGMENT_BITS)];
+    }
+
+    /**
+     * アクセス順を保つ LinkedHashMap による1区画分のLRU。
+     */
+    private final class Segment extends LinkedHashMap<Key, Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final int segmentCapacity;
+
+        Segment(int segmentCapacity) {
+            super(16, 0.75f, true);
+            this.segmentCapacity = segmentCapacity;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Double> eldest) {
+            if (size() > segmentCapacity) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * 内容ハッシュの組（小さい方が first）。
+     */
+    private static final class Key {
+        final long first;
+        final long second;
+
+        Key(long first, long second) {
+            this.first = first;
+            this.second = second;
+        }
+
+        static Key of(long hashA, long hashB) {
+            return hashA <= hashB ? new Key(hashA, hashB) : new Key(hashB, hashA);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return first == other.first && second == other.second;
+        }
+
+        @Override
+        public int hashCode() {
+            long h = first * 0x9E3779B97F4A7C15L + second;
+            return (int) (h ^ (h >>> 32));
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package matching;
+
+import java.util.Map;
+
+import model.UmlClass;
+
+/**
+ * Matcherによるマッチング結果と、その評価値・所要時間をまとめたクラス。
+ */
+public class MatchResult {
+
+    private final Map<UmlClass, UmlClass> matches;
+    private final Matcher.AssignmentMode mode;
+    private final double matchedCost;
+    private final int unmatchedCount;
+    private final double unmatchedCost;
+    private final long elapsedNanos;
+
+    public MatchResult(Map<UmlClass, UmlClass> matches, Matcher.AssignmentMode mode, double matchedCost,
+                       int unmatchedCount, double unmatchedCost, long elapsedNanos) {
+        this.matches = matches;
+        this.mode = mode;
+        this.matchedCost = matchedCost;
+        this.unmatchedCount = unmatchedCount;
+        this.unmatchedCost = unmatchedCost;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public Map<UmlClass, UmlClass> getMatches() {
+        return matches;
+    }
+
+    public Matcher.AssignmentMode getMode() {
+        return mode;
+    }
+
+    /** マッチしたペアの距離の合計 */
+    public double getMatchedCost() {
+        return matchedCost;
+    }
+
+    /** 相手が見つからなかったAのクラスの数 */
+    public int getUnmatchedCount() {
+        return unmatchedCount;
+    }
+
+    /**
+     * 総コスト（マッチしたペアの距離の合計 + マッチしなかったクラス数 × 閾値）。
+     * OPTIMALモードはこの値を最小化する。
+     */
+    public double getTotalCost() {
+        return matchedCost + unmatchedCount * unmatchedCost;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: matched=%d, unmatched=%d, matchedCost=%.4f, totalCost=%.4f, time=%.3f ms",
+            mode, matches.size(), unmatchedCount, matchedCost, getTotalCost(), elapsedNanos / 1_000_000.0);
+    }
+}
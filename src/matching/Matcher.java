@@ -1,16 +1,30 @@
 package matching;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
+import concurrent.SharedPools;
+import metrics.Tracer;
+import model.ColumnarDiagram;
+import model.DiagramView;
+import model.Levenshtein;
 import model.UmlClass;
 import model.UmlDiagram;
 
 /**
  * 2つのUmlDiagramを比較し、対応するUmlClass要素をマッチングさせるクラス。
  * クラス間の「距離」が小さいほど、類似性が高いと判断する。
+ * 計算は {@link DiagramView} の上で行い、結果はクラス番号の対応（{@link #matchIndices}）で返す。
+ * UmlDiagramを受け取るメソッドは列指向に変換してから計算し、結果をUmlClassの対応に戻す。
+ * インスタンスは設定以外の状態を持たないので、複数のスレッドから同時に match を呼び出してよい。
  */
 public class Matcher {
 
@@ -19,98 +33,1048 @@ public class Matcher {
     private static final double W_NAME = 1.0;   // 名前の距離に対する重み
     private static final double W_ATTR = 0.5;   // 属性の距離に対する重み
     private static final double W_COORD = 1.0;  // 座標の距離に対する重み
+    // 属性の重なりによる対応付け（MinHashLshを指定したときだけ行う）
+    private static final double ATTR_RESCUE_MIN_JACCARD = 0.8; // この係数以上のペアだけを対応付ける
+    private static final int ATTR_RESCUE_MIN_ATTRIBUTES = 3;   // 属性がこれより少ないクラスは対象にしない
     // ---
 
-    private static final boolean DEBUG_MODE = true;
+    // 距離の計算方法を表す値。MatchCache をファイルに保存するときに記録し、
+    // パラメータを変えた後に古い距離を読み込まないようにする
+    static final long COST_MODEL_FINGERPRINT = Arrays.hashCode(new double[] {
+        DISTANCE_THRESHOLD, W_NAME, W_ATTR, W_COORD, 1 /* 距離の定義を変えたら増やす */ });
+
+    // 座標の距離だけで閾値に達するペアは、他の項が非負である以上マッチし得ない。
+    // この半径より離れたBのクラスは空間インデックスで候補から除外する。
+    private static final double COORD_SEARCH_RADIUS = DISTANCE_THRESHOLD / W_COORD;
+
+    // 名前・属性の編集距離がこの値を超えると、その項だけで閾値に達するため正確な値は不要。
+    // レーベンシュタイン距離の計算はこの上限で打ち切る。
+    private static final int NAME_DISTANCE_CUTOFF = (int) Math.ceil(DISTANCE_THRESHOLD / W_NAME);
+    private static final int ATTR_DISTANCE_CUTOFF = (int) Math.ceil(DISTANCE_THRESHOLD / W_ATTR);
+
+    /**
+     * 候補ペアの中から対応を決める方法。
+     */
+    public enum AssignmentMode {
+        GREEDY,  // Aのクラスを順に見て、その時点で最も近いBのクラスを確定させる（高速）
+        OPTIMAL  // 閾値未満の候補ペア全体で総コストが最小になる割り当てを求める
+    }
+
+    /**
+     * 内容がまったく同じクラスどうしを、距離の計算より先に対応付ける方法。
+     * 名前と属性セットが同じで、そのキーがA・Bそれぞれの中で1つしかないクラスどうしだけを対応付ける
+     * （同じ内容のクラスが複数あれば、どれが対応するかは距離で決める）。
+     * 対応付けたペアの距離は座標の距離だけになるので、通常の計算で得られる値と同じになる。
+     */
+    public enum ExactMatchMode {
+        OFF,      // 行わない
+        CONTENT,  // 名前と属性セットが同じなら対応付ける（座標の距離は閾値未満であること）
+        POSITION  // 名前・属性セットに加えて座標も同じ場合だけ対応付ける
+    }
+
+    // コスト計算を並列化するときの1タスクあたりの行数
+    private static final int ROW_BLOCK_SIZE = 64;
+
+    private final AssignmentMode assignmentMode;
+    private final int parallelism;
+    private final ForkJoinPool pool; // 同じ並列度のインスタンスと共有する。parallelism が1のときは使わない（null）
+    private final Tracer tracer;
+    private final MatchCache cache; // 距離のキャッシュを使わないときは null
+    private final MinHashLsh attributeLsh; // 属性の重なりによる対応付けをしないときは null
+    private final ExactMatchMode exactMatchMode;
+
+    public Matcher() {
+        this(AssignmentMode.GREEDY);
+    }
+
+    public Matcher(AssignmentMode assignmentMode) {
+        this(assignmentMode, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param assignmentMode 割り当て方法
+     * @param parallelism コスト計算に使うスレッド数（1なら呼び出し元のスレッドだけで計算する）
+     */
+    public Matcher(AssignmentMode assignmentMode, int parallelism) {
+        this(assignmentMode, parallelism, Tracer.NOOP);
+    }
+
+    /**
+     * @param assignmentMode 割り当て方法
+     * @param parallelism コスト計算に使うスレッド数（1なら呼び出し元のスレッドだけで計算する）
+     * @param tracer 計測・詳細ログの出力先（ペアごとの距離の内訳は詳細ログが有効なときだけ出力する）
+     */
+    public Matcher(AssignmentMode assignmentMode, int parallelism, Tracer tracer) {
+        this(assignmentMode, parallelism, tracer, null);
+    }
+
+    /**
+     * @param assignmentMode 割り当て方法
+     * @param parallelism コスト計算に使うスレッド数（1なら呼び出し元のスレッドだけで計算する）
+     * @param tracer 計測・詳細ログの出力先（ペアごとの距離の内訳は詳細ログが有効なときだけ出力する）
+     * @param cache ペアごとの距離のキャッシュ（null ならキャッシュしない）。複数のMatcherで共有してよい
+     */
+    public Matcher(AssignmentMode assignmentMode, int parallelism, Tracer tracer, MatchCache cache) {
+        this(assignmentMode, parallelism, tracer, cache, null);
+    }
+
+    /**
+     * @param assignmentMode 割り当て方法
+     * @param parallelism コスト計算に使うスレッド数（1なら呼び出し元のスレッドだけで計算する）
+     * @param tracer 計測・詳細ログの出力先（ペアごとの距離の内訳は詳細ログが有効なときだけ出力する）
+     * @param cache ペアごとの距離のキャッシュ（null ならキャッシュしない）。複数のMatcherで共有してよい
+     * @param attributeLsh 割り当ての後、対応の見つからなかったクラスどうしを属性の重なりで対応付けるときの
+     *                     MinHash/LSHの設定（null なら行わない）。名前も座標も大きく変わったクラスを拾うために使う
+     */
+    public Matcher(AssignmentMode assignmentMode, int parallelism, Tracer tracer, MatchCache cache, MinHashLsh attributeLsh) {
+        this(assignmentMode, parallelism, tracer, cache, attributeLsh, ExactMatchMode.CONTENT);
+    }
+
+    /**
+     * @param assignmentMode 割り当て方法
+     * @param parallelism コスト計算に使うスレッド数（1なら呼び出し元のスレッドだけで計算する）
+     * @param tracer 計測・詳細ログの出力先（ペアごとの距離の内訳は詳細ログが有効なときだけ出力する）
+     * @param cache ペアごとの距離のキャッシュ（null ならキャッシュしない）。複数のMatcherで共有してよい
+     * @param attributeLsh 属性の重なりによる対応付けのMinHash/LSHの設定（null なら行わない）
+     * @param exactMatchMode 内容が同じクラスどうしを先に対応付ける方法
+     */
+    public Matcher(AssignmentMode assignmentMode, int parallelism, Tracer tracer, MatchCache cache, MinHashLsh attributeLsh,
+                   ExactMatchMode exactMatchMode) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        this.assignmentMode = assignmentMode;
+        this.parallelism = parallelism;
+        this.pool = parallelism > 1 ? SharedPools.forParallelism(parallelism) : null;
+        this.tracer = tracer;
+        this.cache = cache;
+        this.attributeLsh = attributeLsh;
+        this.exactMatchMode = exactMatchMode;
+    }
+
+    public AssignmentMode getAssignmentMode() {
+        return assignmentMode;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public MatchCache getCache() {
+        return cache;
+    }
+
+    public MinHashLsh getAttributeLsh() {
+        return attributeLsh;
+    }
+
+    public ExactMatchMode getExactMatchMode() {
+        return exactMatchMode;
+    }
 
     public Map<UmlClass, UmlClass> match(UmlDiagram diagramA, UmlDiagram diagramB) {
-        Map<UmlClass, UmlClass> matches = new HashMap<>();
-        Set<UmlClass> unmatchedB = new HashSet<>(diagramB.getClasses());
+        return matchWithResult(diagramA, diagramB).getMatches();
+    }
+
+    /**
+     * マッチングを行い、対応表に加えて総コストと所要時間を返します。
+     * 1. 閾値未満の距離を持つ候補ペアだけのコスト行列を作る
+     * 2. 設定されたモードで割り当てを決める
+     */
+    public MatchResult matchWithResult(UmlDiagram diagramA, UmlDiagram diagramB) {
+        try (Tracer.Span span = tracer.startPhase(Tracer.Phase.MATCH)) {
+            MatchResult result = matchAllInternal(diagramA, List.of(diagramB)).get(0);
+            span.setItems(result.getMatches().size());
+            return result;
+        }
+    }
+
+    /**
+     * baseダイアグラムを複数のバージョンそれぞれとマッチングし、バージョンの順に対応表を返します。
+     * @see #matchAllWithResult(UmlDiagram, List)
+     */
+    public List<Map<UmlClass, UmlClass>> matchAll(UmlDiagram baseDiagram, List<UmlDiagram> versionDiagrams) {
+        List<Map<UmlClass, UmlClass>> matches = new ArrayList<>(versionDiagrams.size());
+        for (MatchResult result : matchAllWithResult(baseDiagram, versionDiagrams)) {
+            matches.add(result.getMatches());
+        }
+        return matches;
+    }
+
+    /**
+     * baseダイアグラムを複数のバージョンそれぞれとマッチングします。結果は各バージョンについて
+     * {@link #matchWithResult(UmlDiagram, UmlDiagram)} を呼んだ場合と同じになる。
+     *
+     * baseのクラスの属性ID・内容ハッシュと属性の語彙表は一度だけ作って全バージョンで共有し、
+     * 全バージョンの行ブロックをまとめて並列に計算する。属性間の距離はバージョンをまたいで使い回される。
+     * 各結果の所要時間は、全バージョン分の処理にかかった時間になる。
+     */
+    public List<MatchResult> matchAllWithResult(UmlDiagram baseDiagram, List<UmlDiagram> versionDiagrams) {
+        try (Tracer.Span span = tracer.startPhase(Tracer.Phase.MATCH)) {
+            List<MatchResult> results = matchAllInternal(baseDiagram, versionDiagrams);
+            long items = 0;
+            for (MatchResult result : results) {
+                items += result.getMatches().size();
+            }
+            span.setItems(items);
+            return results;
+        }
+    }
+
+    /**
+     * ビューどうしのマッチングを行います。UmlDiagram版と同じ対応を、クラスの番号で返す。
+     * @return viewA の各クラスに対応する viewB のクラスの番号（対応がなければ -1）
+     */
+    public int[] matchIndices(DiagramView viewA, DiagramView viewB) {
+        return matchAllIndices(viewA, List.of(viewB)).get(0);
+    }
+
+    /**
+     * baseのビューを複数のバージョンのビューそれぞれとマッチングします（{@link #matchAllWithResult} のビュー版）。
+     * @return バージョンの順に、baseの各クラスに対応するバージョン側のクラスの番号（対応がなければ -1）
+     */
+    public List<int[]> matchAllIndices(DiagramView baseView, List<? extends DiagramView> versionViews) {
+        try (Tracer.Span span = tracer.startPhase(Tracer.Phase.MATCH)) {
+            List<Assignment> assignments = assignAll(baseView, versionViews);
+            List<int[]> columns = new ArrayList<>(assignments.size());
+            long items = 0;
+            for (Assignment assignment : assignments) {
+                columns.add(assignment.columns);
+                items += assignment.columns.length - assignment.unmatchedCount;
+            }
+            span.setItems(items);
+            return columns;
+        }
+    }
+
+    /**
+     * UmlDiagram版の入口。クラスを列指向のビューに変換してマッチングし、結果をUmlClassの対応表に戻す。
+     */
+    private List<MatchResult> matchAllInternal(UmlDiagram baseDiagram, List<UmlDiagram> versionDiagrams) {
+        long startTime = System.nanoTime();
+
+        List<UmlClass> rows = new ArrayList<>(baseDiagram.getClasses());
+        List<List<UmlClass>> columnsPerVersion = new ArrayList<>(versionDiagrams.size());
+        List<DiagramView> versionViews = new ArrayList<>(versionDiagrams.size());
+        for (UmlDiagram versionDiagram : versionDiagrams) {
+            List<UmlClass> columns = new ArrayList<>(versionDiagram.getClasses());
+            columnsPerVersion.add(columns);
+            versionViews.add(viewOf(columns));
+        }
+        List<Assignment> assignments = assignAll(viewOf(rows), versionViews);
+
+        List<MatchResult> results = new ArrayList<>(assignments.size());
+        for (int v = 0; v < assignments.size(); v++) {
+            Assignment assignment = assignments.get(v);
+            List<UmlClass> columns = columnsPerVersion.get(v);
+            Map<UmlClass, UmlClass> matches = new LinkedHashMap<>(); // 行の順番を保ち、出力を決定的にする
+            for (int row = 0; row < rows.size(); row++) {
+                if (assignment.columns[row] >= 0) {
+                    matches.put(rows.get(row), columns.get(assignment.columns[row]));
+                }
+            }
+            results.add(new MatchResult(matches, assignmentMode, assignment.matchedCost, assignment.unmatchedCount,
+                DISTANCE_THRESHOLD, System.nanoTime() - startTime));
+        }
+        return results;
+    }
+
+    /**
+     * クラスのリストを、i 番目のクラスがリストの i 番目の要素に対応するビューに変換する（関係は含めない）。
+     */
+    private static DiagramView viewOf(List<UmlClass> classes) {
+        ColumnarDiagram.Builder builder = new ColumnarDiagram.Builder();
+        for (UmlClass umlClass : classes) {
+            builder.addClass(umlClass.id, umlClass.name, umlClass.x, umlClass.y, umlClass.attributes);
+        }
+        return builder.build();
+    }
 
-        if (DEBUG_MODE) {
-            System.out.println("\n--- Starting Matcher (Distance-based) ---");
-            System.out.println(String.format("Parameters: THRESHOLD=%.2f, W_NAME=%.2f, W_ATTR=%.2f, W_COORD=%.2f",
+    /**
+     * 1. 閾値未満の距離を持つ候補ペアだけのコスト行列をバージョンごとに作る
+     * 2. 設定されたモードで割り当てを決める
+     */
+    private List<Assignment> assignAll(DiagramView baseView, List<? extends DiagramView> versionViews) {
+        if (tracer.isVerbose()) {
+            tracer.verbose("\n--- Starting Matcher (Distance-based, " + assignmentMode + ") ---");
+            tracer.verbose(String.format("Parameters: THRESHOLD=%.2f, W_NAME=%.2f, W_ATTR=%.2f, W_COORD=%.2f",
                 DISTANCE_THRESHOLD, W_NAME, W_ATTR, W_COORD));
         }
 
-        for (UmlClass classA : diagramA.getClasses()) {
-            UmlClass bestMatch = null;
-            double lowestDistance = Double.MAX_VALUE;
+        List<CostContext> contexts = createContexts(baseView, versionViews);
+        List<CandidateGraph> graphs = buildCandidateGraphs(contexts);
+        // 割り当てもバージョンごとに独立なので並列に解く
+        List<Callable<int[]>> solveTasks = new ArrayList<>(graphs.size());
+        for (CandidateGraph graph : graphs) {
+            solveTasks.add(() -> createSolver().solve(graph));
+        }
+        List<int[]> solutions = runAll(solveTasks);
+
+        // 残ったクラスどうしを属性の重なりで対応付ける（解を書き換え、対応付けた行にJaccard係数を記録する）
+        List<double[]> rescued = null;
+        if (attributeLsh != null) {
+            List<Callable<double[]>> rescueTasks = new ArrayList<>(contexts.size());
+            for (int v = 0; v < contexts.size(); v++) {
+                CostContext context = contexts.get(v);
+                int[] solution = solutions.get(v);
+                rescueTasks.add(() -> rescueByAttributes(context, solution));
+            }
+            rescued = runAll(rescueTasks);
+        }
+
+        List<Assignment> assignments = new ArrayList<>(graphs.size());
+        for (int v = 0; v < graphs.size(); v++) {
+            if (tracer.isVerbose() && graphs.size() > 1) {
+                tracer.verbose("\n--- Matches for version " + (v + 1) + " ---");
+            }
+            assignments.add(toAssignment(contexts.get(v), graphs.get(v), solutions.get(v),
+                rescued == null ? null : rescued.get(v)));
+        }
+        return assignments;
+    }
+
+    private Assignment toAssignment(CostContext context, CandidateGraph graph, int[] solution, double[] rescuedSimilarities) {
+        DiagramView rows = context.rows.view;
+        DiagramView columns = context.columns.view;
+        double matchedCost = 0.0;
+        int unmatchedCount = 0;
+        for (int row = 0; row < graph.rowCount(); row++) {
+            int column = solution[row];
+            if (column < 0) {
+                unmatchedCount++;
+                if (tracer.isVerbose()) {
+                    tracer.verbose("  => '" + rows.className(row) + "': No suitable match found");
+                }
+                continue;
+            }
+            if (rescuedSimilarities != null && !Double.isNaN(rescuedSimilarities[row])) {
+                // 候補の辺ではないので、総合距離をその場で計算する（閾値以上になる）
+                double coordDistance = calculateCoordinateDistance(rows.classX(row), rows.classY(row),
+                    columns.classX(column), columns.classY(column));
+                double distance = computeDistance(context, row, column, coordDistance, new RowBlock(0, false));
+                matchedCost += distance;
+                if (tracer.isVerbose()) {
+                    tracer.verbose("  => '" + rows.className(row) + "': Matched by attribute overlap: '" + columns.className(column)
+                        + "' with Jaccard " + String.format("%.4f", rescuedSimilarities[row]));
+                }
+                continue;
+            }
+            double distance = costOf(graph, row, column);
+            matchedCost += distance;
+            if (tracer.isVerbose()) {
+                tracer.verbose("  => '" + rows.className(row) + "': Best match found: '" + columns.className(column)
+                    + "' with distance " + String.format("%.4f", distance));
+            }
+        }
+        return new Assignment(solution, matchedCost, unmatchedCount);
+    }
+
+    /**
+     * 割り当てで対応の見つからなかった行と列を、属性セットのJaccard係数で対応付ける。
+     * 列をMinHash/LSHの索引に登録し、行ごとに帯の一致した列だけを候補にして正確なJaccard係数を計算する。
+     * 係数が ATTR_RESCUE_MIN_JACCARD 以上で最も高い列を、行の順に確定させる。
+     * 最も高い係数の列が複数ある行は、どれが正しいか属性だけでは決められないので対応付けない。
+     * @param solution 行ごとの列（対応がなければ -1）。対応付けた行の値を書き換える
+     * @return 行ごとの、属性の重なりで対応付けたときのJaccard係数（それ以外の行は NaN）
+     */
+    private double[] rescueByAttributes(CostContext context, int[] solution) {
+        ClassTable rows = context.rows;
+        ClassTable columns = context.columns;
+        int columnCount = columns.view.classCount();
+        double[] similarities = new double[solution.length];
+        Arrays.fill(similarities, Double.NaN);
+
+        boolean[] columnTaken = new boolean[columnCount];
+        for (int column : solution) {
+            if (column >= 0) {
+                columnTaken[column] = true;
+            }
+        }
+        // 要素のハッシュは語彙表の文字列から作る（語彙表のIDは全バージョンで共通）
+        long[] elementHashes = new long[context.vocabulary.size()];
+        for (int id = 0; id < elementHashes.length; id++) {
+            elementHashes[id] = MinHashLsh.mix(context.vocabulary.get(id).hashCode());
+        }
+        MinHashLsh.Index index = attributeLsh.newIndex();
+        for (int column = 0; column < columnCount; column++) {
+            if (!columnTaken[column] && columns.attributeCount(column) >= ATTR_RESCUE_MIN_ATTRIBUTES) {
+                index.add(column, attributeLsh.signature(hashesOf(columns, column, elementHashes), 0, columns.attributeCount(column)));
+            }
+        }
+
+        long candidatePairs = 0;
+        int rescuedCount = 0;
+        for (int row = 0; row < solution.length; row++) {
+            if (solution[row] >= 0 || rows.attributeCount(row) < ATTR_RESCUE_MIN_ATTRIBUTES) {
+                continue;
+            }
+            int[] candidates = index.candidates(attributeLsh.signature(hashesOf(rows, row, elementHashes), 0, rows.attributeCount(row)));
+            candidatePairs += candidates.length;
+            int bestColumn = -1;
+            double bestSimilarity = ATTR_RESCUE_MIN_JACCARD;
+            boolean ambiguous = false;
+            for (int column : candidates) {
+                if (columnTaken[column]) {
+                    continue;
+                }
+                double similarity = calculateJaccardSimilarity(rows, row, columns, column);
+                if (similarity > bestSimilarity || (bestColumn < 0 && similarity == bestSimilarity)) {
+                    bestColumn = column;
+                    bestSimilarity = similarity;
+                    ambiguous = false;
+                } else if (bestColumn >= 0 && similarity == bestSimilarity) {
+                    ambiguous = true;
+                }
+            }
+            if (bestColumn >= 0 && !ambiguous) {
+                solution[row] = bestColumn;
+                columnTaken[bestColumn] = true;
+                similarities[row] = bestSimilarity;
+                rescuedCount++;
+            }
+        }
+        tracer.count(Tracer.Counter.LSH_CANDIDATES, candidatePairs);
+        tracer.count(Tracer.Counter.LSH_RESCUED, rescuedCount);
+        return similarities;
+    }
+
+    private static long[] hashesOf(ClassTable table, int c, long[] elementHashes) {
+        long[] hashes = new long[table.attributeCount(c)];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = elementHashes[table.attributeIds[table.attributeOffsets[c] + i]];
+        }
+        return hashes;
+    }
+
+    /**
+     * 2つのクラスの属性セットのJaccard係数を計算する（{@link UmlClass#calculateJaccardSimilarity} と同じ値）。
+     * 属性は語彙表のIDで比べる。1つのクラスに同じ属性は重複しない。
+     */
+    private static double calculateJaccardSimilarity(ClassTable tableA, int a, ClassTable tableB, int b) {
+        int intersection = 0;
+        for (int i = tableA.attributeOffsets[a]; i < tableA.attributeOffsets[a + 1]; i++) {
+            for (int j = tableB.attributeOffsets[b]; j < tableB.attributeOffsets[b + 1]; j++) {
+                if (tableA.attributeIds[i] == tableB.attributeIds[j]) {
+                    intersection++;
+                    break;
+                }
+            }
+        }
+        int union = tableA.attributeCount(a) + tableB.attributeCount(b) - intersection;
+        return union == 0 ? 1.0 : (double) intersection / union;
+    }
+
+    /**
+     * 1つのバージョンとの割り当て結果。
+     */
+    private static final class Assignment {
+        final int[] columns; // 行ごとの列（対応がなければ -1）
+        final double matchedCost;
+        final int unmatchedCount;
+
+        Assignment(int[] columns, double matchedCost, int unmatchedCount) {
+            this.columns = columns;
+            this.matchedCost = matchedCost;
+            this.unmatchedCount = unmatchedCount;
+        }
+    }
+
+    private AssignmentSolver createSolver() {
+        switch (assignmentMode) {
+            case OPTIMAL:
+                return new HungarianAssignment(DISTANCE_THRESHOLD);
+            case GREEDY:
+            default:
+                return new GreedyAssignment();
+        }
+    }
+
+    private static double costOf(CandidateGraph graph, int row, int column) {
+        for (int e = graph.edgeStart(row); e < graph.edgeEnd(row); e++) {
+            if (graph.edgeColumn(e) == column) {
+                return graph.edgeCost(e);
+            }
+        }
+        throw new IllegalStateException("assigned pair is not a candidate edge");
+    }
+
+    /**
+     * baseの表と属性の語彙表は一度だけ作り、全バージョンで共有する。
+     * 語彙表は最初の距離の問い合わせで固定されるので、全バージョンの属性を登録してから計算を始める。
+     */
+    private List<CostContext> createContexts(DiagramView baseView, List<? extends DiagramView> versionViews) {
+        AttributeVocabulary vocabulary = new AttributeVocabulary(ATTR_DISTANCE_CUTOFF);
+        ClassTable rows = new ClassTable(baseView, vocabulary, cache != null, exactMatchMode);
+        List<CostContext> contexts = new ArrayList<>(versionViews.size());
+        for (DiagramView versionView : versionViews) {
+            contexts.add(new CostContext(rows, new ClassTable(versionView, vocabulary, cache != null, exactMatchMode),
+                vocabulary, exactMatchMode));
+        }
+        return contexts;
+    }
+
+    /**
+     * 各バージョンについて、baseの各クラスと総合距離が閾値未満になるバージョン側のクラスとの辺だけを持つ
+     * コスト行列を作る。行（baseのクラス）を ROW_BLOCK_SIZE 行ずつのブロックに分け、全バージョンのブロックを
+     * まとめて並列に計算し、最後にバージョンごとに行の順番どおりに連結する。
+     * 各行の計算は他の行に依存しないので、スレッド数に関係なく同じコスト行列になる。
+     */
+    private List<CandidateGraph> buildCandidateGraphs(List<CostContext> contexts) {
+        int rowCount = contexts.get(0).rows.view.classCount();
+        int blockCount = (rowCount + ROW_BLOCK_SIZE - 1) / ROW_BLOCK_SIZE;
+        List<Callable<RowBlock>> tasks = new ArrayList<>(blockCount * contexts.size());
+        for (CostContext context : contexts) {
+            for (int b = 0; b < blockCount; b++) {
+                int from = b * ROW_BLOCK_SIZE;
+                int to = Math.min(rowCount, from + ROW_BLOCK_SIZE);
+                tasks.add(() -> computeRowBlock(from, to, context));
+            }
+        }
+        List<RowBlock> blocks = runAll(tasks);
+
+        List<CandidateGraph> graphs = new ArrayList<>(contexts.size());
+        long totalPairs = 0;
+        long evaluatedPairs = 0;
+        long computedPairs = 0;
+        long cacheHits = 0;
+        long nameLengthPrunedPairs = 0;
+        long attrCountPrunedPairs = 0;
+        long qgramPrunedPairs = 0;
+        long nameBudgetPrunedPairs = 0;
+        long attrBudgetPrunedPairs = 0;
+        long exactPairs = 0;
+        int next = 0;
+        for (CostContext context : contexts) {
+            int columnCount = context.columns.view.classCount();
+            CandidateGraph.Builder builder = new CandidateGraph.Builder(rowCount, columnCount);
+            for (int b = 0; b < blockCount; b++) {
+                RowBlock block = blocks.get(next++);
+                if (block.debugLog != null) {
+                    tracer.verbose(block.debugLog.toString().stripTrailing());
+                }
+                evaluatedPairs += block.evaluatedPairs;
+                computedPairs += block.computedPairs;
+                cacheHits += block.cacheHits;
+                nameLengthPrunedPairs += block.nameLengthPrunedPairs;
+                attrCountPrunedPairs += block.attrCountPrunedPairs;
+                qgramPrunedPairs += block.qgramPrunedPairs;
+                nameBudgetPrunedPairs += block.nameBudgetPrunedPairs;
+                attrBudgetPrunedPairs += block.attrBudgetPrunedPairs;
+                exactPairs += block.exactPairs;
+                int edge = 0;
+                for (int r = 0; r < block.rowCount; r++) {
+                    builder.startRow();
+                    for (int end = edge + block.rowEdgeCounts[r]; edge < end; edge++) {
+                        builder.addEdge(block.edgeColumns[edge], block.edgeCosts[edge]);
+                    }
+                }
+            }
+            graphs.add(builder.build());
+            totalPairs += (long) rowCount * columnCount;
+        }
+        tracer.count(Tracer.Counter.PAIRS_EVALUATED, evaluatedPairs);
+        tracer.count(Tracer.Counter.PAIRS_PRUNED, totalPairs - evaluatedPairs);
+        tracer.count(Tracer.Counter.NAME_LENGTH_PRUNED, nameLengthPrunedPairs);
+        tracer.count(Tracer.Counter.ATTR_COUNT_PRUNED, attrCountPrunedPairs);
+        tracer.count(Tracer.Counter.NAME_QGRAM_PRUNED, qgramPrunedPairs);
+        tracer.count(Tracer.Counter.NAME_BUDGET_PRUNED, nameBudgetPrunedPairs);
+        tracer.count(Tracer.Counter.ATTR_BUDGET_PRUNED, attrBudgetPrunedPairs);
+        tracer.count(Tracer.Counter.EXACT_MATCHES, exactPairs);
+        // 名前はキャッシュになかったペアごとに1回、属性は語彙表で重複を除いた組み合わせごとに1回計算する
+        tracer.count(Tracer.Counter.LEVENSHTEIN_CALLS, computedPairs + contexts.get(0).vocabulary.computedDistances());
+        if (cache != null) {
+            tracer.count(Tracer.Counter.MATCH_CACHE_HITS, cacheHits);
+            tracer.count(Tracer.Counter.MATCH_CACHE_MISSES,
+                evaluatedPairs - nameLengthPrunedPairs - attrCountPrunedPairs - qgramPrunedPairs - cacheHits);
+        }
+        return graphs;
+    }
+
+    private <T> List<T> runAll(List<Callable<T>> tasks) {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (pool == null || tasks.size() <= 1) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+            } else {
+                for (Future<T> future : pool.invokeAll(tasks)) {
+                    results.add(future.get());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("matching was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to compute matching costs", e.getCause());
+        } catch (Exception e) {
+            throw new IllegalStateException("failed to compute matching costs", e);
+        }
+        return results;
+    }
+
+    /**
+     * 行 from から to の手前までの候補ペアのコストを計算する。
+     */
+    private RowBlock computeRowBlock(int from, int to, CostContext context) {
+        ClassTable rows = context.rows;
+        ClassTable columns = context.columns;
+        RowBlock block = new RowBlock(to - from, tracer.isVerbose());
+        for (int row = from; row < to; row++) {
+            int xA = rows.view.classX(row);
+            int yA = rows.view.classY(row);
+            int edgesBefore = block.edgeCount;
+
+            if (block.debugLog != null) {
+                block.debugLog.append("\n----- Matching for Class A: '").append(rows.view.className(row)).append("' -----\n");
+            }
+
+            // 内容が同じクラスと対応付け済みの行は、その1本だけを辺にする（名前と属性の距離は0）
+            int exactColumn = context.exactColumns != null ? context.exactColumns[row] : -1;
+            if (exactColumn >= 0) {
+                double coordDistance = calculateCoordinateDistance(xA, yA,
+                    columns.view.classX(exactColumn), columns.view.classY(exactColumn));
+                block.addEdge(exactColumn, coordDistance * W_COORD);
+                block.exactPairs++;
+                if (block.debugLog != null) {
+                    block.debugLog.append("  Exact duplicate: '").append(columns.view.className(exactColumn)).append("'\n");
+                    block.debugLog.append(String.format("    -> Total Dist:    %.4f%n", coordDistance * W_COORD));
+                }
+                block.rowEdgeCounts[row - from] = 1;
+                continue;
+            }
+
+            for (int column : context.indexB.candidates(xA, yA, COORD_SEARCH_RADIUS)) {
+                // 内容が同じ別の行と対応付け済みの列は候補にしない
+                if (context.exactColumnTaken != null && context.exactColumnTaken[column]) {
+                    continue;
+                }
+
+                // 0. 座標の距離（周辺セルに入っていても半径外なら枝刈りする）
+                double coordDistance = calculateCoordinateDistance(xA, yA, columns.view.classX(column), columns.view.classY(column));
+                if (coordDistance >= COORD_SEARCH_RADIUS) {
+                    continue;
+                }
+
+                block.evaluatedPairs++;
+
+                // 1. 名前の長さの差はレーベンシュタイン距離の下限。座標の距離と合わせて閾値に達するなら除く
+                int nameLowerBound = Math.abs(rows.nameGrams.nameLength(row) - columns.nameGrams.nameLength(column));
+                if (totalDistance(nameLowerBound, 0, coordDistance) >= DISTANCE_THRESHOLD) {
+                    block.nameLengthPrunedPairs++;
+                    if (block.debugLog != null) {
+                        block.debugLog.append("  Comparing with Class B: '").append(columns.view.className(column)).append("'\n");
+                        block.debugLog.append(String.format("    -> Skipped: name length differs by %d%n", nameLowerBound));
+                    }
+                    continue;
+                }
+
+                // 2. 属性の数の差から求めた属性の距離の下限を加える
+                int attrLowerBound = attributeLowerBound(rows.distinctAttributeCounts[row], columns.distinctAttributeCounts[column]);
+                if (totalDistance(nameLowerBound, attrLowerBound, coordDistance) >= DISTANCE_THRESHOLD) {
+                    block.attrCountPrunedPairs++;
+                    if (block.debugLog != null) {
+                        block.debugLog.append("  Comparing with Class B: '").append(columns.view.className(column)).append("'\n");
+                        block.debugLog.append(String.format("    -> Skipped: attribute count bound %d%n", attrLowerBound));
+                    }
+                    continue;
+                }
+
+                // 3. 名前のq-gramによる枝刈り。座標の距離と属性の距離の下限を差し引いた残りを名前の距離だけで
+                //    使い切るペアは閾値に達するので、レーベンシュタイン距離を計算せずに除く
+                int nameBudget = nameBudget(attrLowerBound, coordDistance);
+                if (!rows.nameGrams.mayBeWithin(row, columns.nameGrams, column, nameBudget)) {
+                    block.qgramPrunedPairs++;
+                    if (block.debugLog != null) {
+                        block.debugLog.append("  Comparing with Class B: '").append(columns.view.className(column)).append("'\n");
+                        block.debugLog.append(String.format("    -> Skipped: name distance exceeds %d (q-gram filter)%n", nameBudget));
+                    }
+                    continue;
+                }
+
+                // 4. 正確な距離（キャッシュになければ、名前・属性の順に計算し、閾値に達した時点で打ち切る）
+                double totalDistance;
+                if (cache != null) {
+                    long hashA = rows.contentHashes[row];
+                    long hashB = columns.contentHashes[column];
+                    totalDistance = cache.get(hashA, hashB);
+                    if (Double.isNaN(totalDistance)) {
+                        totalDistance = computeDistance(context, row, column, coordDistance, attrLowerBound, nameBudget, true, block);
+                        cache.put(hashA, hashB, totalDistance);
+                    } else {
+                        block.cacheHits++;
+                        if (block.debugLog != null) {
+                            block.debugLog.append("  Comparing with Class B: '").append(columns.view.className(column)).append("'\n");
+                            block.debugLog.append(String.format("    -> Total Dist:    %.4f (cached)%n", totalDistance));
+                        }
+                    }
+                } else {
+                    totalDistance = computeDistance(context, row, column, coordDistance, attrLowerBound, nameBudget, true, block);
+                }
+
+                if (totalDistance < DISTANCE_THRESHOLD) {
+                    block.addEdge(column, totalDistance);
+                }
+            }
+            block.rowEdgeCounts[row - from] = block.edgeCount - edgesBefore;
+        }
+        return block;
+    }
+
+    /**
+     * 名前・属性・座標の距離から、閾値で打ち切らずに総合距離を計算する（座標の距離は計算済みのものを受け取る）。
+     */
+    private double computeDistance(CostContext context, int row, int column, double coordDistance, RowBlock block) {
+        return computeDistance(context, row, column, coordDistance, 0, NAME_DISTANCE_CUTOFF, false, block);
+    }
+
+    /**
+     * 名前・属性・座標の距離から総合距離を計算する（座標の距離は計算済みのものを受け取る）。
+     * abandon が true なら、名前の距離が nameBudget を超えた時点、または属性の距離の途中までの和で
+     * 閾値に達した時点で計算を打ち切り、その時点の和（閾値以上の下限値）を返す。閾値未満になるペアでは、打ち切らない計算と同じ値になる。
+     * @param attrLowerBound 属性の距離の下限（{@link #attributeLowerBound}）
+     * @param nameBudget 名前の距離の上限（{@link #nameBudget}）
+     */
+    private double computeDistance(CostContext context, int row, int column, double coordDistance,
+                                   int attrLowerBound, int nameBudget, boolean abandon, RowBlock block) {
+        block.computedPairs++;
+        ClassTable rows = context.rows;
+        ClassTable columns = context.columns;
+
+        // 1. 名前の距離（上限を超えたら上限+1が返る）
+        int nameDistance = calculateNameDistance(rows.view.className(row), columns.view.className(column), nameBudget);
+        if (abandon && nameDistance > nameBudget) {
+            block.nameBudgetPrunedPairs++;
+            if (block.debugLog != null) {
+                block.debugLog.append("  Comparing with Class B: '").append(columns.view.className(column)).append("'\n");
+                block.debugLog.append(String.format("    -> Abandoned: name distance exceeds %d%n", nameBudget));
+            }
+            return totalDistance(nameDistance, attrLowerBound, coordDistance);
+        }
 
-            if (DEBUG_MODE) {
-                System.out.println("\n----- Matching for Class A: '" + classA.name + "' -----");
+        // 2. 属性の距離（上限を超えたら、その時点の和が返る）
+        int attrBudget = abandon ? attributeBudget(nameDistance, coordDistance) : Integer.MAX_VALUE;
+        int attrDistance = calculateAttributeDistance(
+            rows.attributeIds, rows.attributeOffsets[row], rows.attributeOffsets[row + 1],
+            columns.attributeIds, columns.attributeOffsets[column], columns.attributeOffsets[column + 1],
+            context.vocabulary, attrBudget);
+        if (attrDistance > attrBudget) {
+            block.attrBudgetPrunedPairs++;
+            if (block.debugLog != null) {
+                block.debugLog.append("  Comparing with Class B: '").append(columns.view.className(column)).append("'\n");
+                block.debugLog.append(String.format("    -> Abandoned: attribute distance exceeds %d%n", attrBudget));
             }
+            return totalDistance(nameDistance, attrDistance, coordDistance);
+        }
+
+        // 3. 総合距離
+        double totalDistance = totalDistance(nameDistance, attrDistance, coordDistance);
+
+        if (block.debugLog != null) {
+            block.debugLog.append("  Comparing with Class B: '").append(columns.view.className(column)).append("'\n");
+            block.debugLog.append(String.format("    - Name Dist:      %.2f (%.2f * %.2f)%n", nameDistance * W_NAME, (double) nameDistance, W_NAME));
+            block.debugLog.append(String.format("    - Attribute Dist: %.2f (%.2f * %.2f)%n", attrDistance * W_ATTR, (double) attrDistance, W_ATTR));
+            block.debugLog.append(String.format("    - Coordinate Dist:%.2f (%.2f * %.2f)%n", coordDistance * W_COORD, coordDistance, W_COORD));
+            block.debugLog.append(String.format("    -> Total Dist:    %.4f%n", totalDistance));
+        }
+        return totalDistance;
+    }
+
+    /**
+     * 名前・属性・座標の距離から総合距離を求める。下限値の判定にも同じ式を使い、
+     * 浮動小数点の丸めを含めて「下限値で閾値に達するなら正確な値でも達する」ようにする（加算は値について単調）。
+     */
+    private static double totalDistance(int nameDistance, int attrDistance, double coordDistance) {
+        return (nameDistance * W_NAME) +
+               (attrDistance * W_ATTR) +
+               (coordDistance * W_COORD);
+    }
+
+    /**
+     * 属性の数の差から、属性の距離の下限を求める。引数は重複を除いた属性の数。
+     * 多い側の属性のうち少なくとも差の数だけは相手に同じ文字列がないので、それぞれ1以上の距離を持つ。
+     * ただし相手が空なら距離は属性の文字数になり、空文字列の属性（高々1つ）は0になり得る。
+     */
+    private static int attributeLowerBound(int distinctA, int distinctB) {
+        int difference = Math.abs(distinctA - distinctB);
+        if (difference > 0 && Math.min(distinctA, distinctB) == 0) {
+            difference--;
+        }
+        return difference;
+    }
+
+    /**
+     * 属性の距離が attrDistance のとき、総合距離が閾値未満になり得る名前の距離の最大値を返す（なければ -1）。
+     */
+    private static int nameBudget(int attrDistance, double coordDistance) {
+        int budget = (int) Math.min(NAME_DISTANCE_CUTOFF,
+            Math.floor((DISTANCE_THRESHOLD - coordDistance * W_COORD - attrDistance * W_ATTR) / W_NAME));
+        // 式で求めた値を、totalDistance の丸めに合わせて補正する
+        while (budget >= 0 && totalDistance(budget, attrDistance, coordDistance) >= DISTANCE_THRESHOLD) {
+            budget--;
+        }
+        while (budget < NAME_DISTANCE_CUTOFF && totalDistance(budget + 1, attrDistance, coordDistance) < DISTANCE_THRESHOLD) {
+            budget++;
+        }
+        return budget;
+    }
+
+    /**
+     * 名前の距離が nameDistance のとき、総合距離が閾値未満になり得る属性の距離の最大値を返す。
+     */
+    private static int attributeBudget(int nameDistance, double coordDistance) {
+        int budget = (int) Math.floor((DISTANCE_THRESHOLD - coordDistance * W_COORD - nameDistance * W_NAME) / W_ATTR);
+        while (budget >= 0 && totalDistance(nameDistance, budget, coordDistance) >= DISTANCE_THRESHOLD) {
+            budget--;
+        }
+        while (totalDistance(nameDistance, budget + 1, coordDistance) < DISTANCE_THRESHOLD) {
+            budget++;
+        }
+        return budget;
+    }
 
-            for (UmlClass classB : unmatchedB) {
-                // 1. 名前の距離
-                double nameDistance = calculateNameDistance(classA, classB);
+    /**
+     * 1つのダイアグラムのクラスについて、コスト計算の間に全スレッドから読み取り専用で共有する値。
+     * 属性はビューの文字列IDから語彙表のIDに置き換え、CSR形式で持つ。名前はq-gramに分解しておく。
+     */
+    private static final class ClassTable {
+        final DiagramView view;
+        final int[] attributeOffsets; // クラス数 + 1 個
+        final int[] attributeIds;     // 語彙表のID
+        final int[] distinctAttributeCounts; // クラスごとの、重複を除いた属性の数（距離の下限に使う）
+        final long[] contentHashes;   // キャッシュを使うときだけ作る（使わないときは null）
+        final QGramIndex nameGrams;
+        final long[] exactKeys;       // 内容が同じクラスを探すためのキー（ExactMatchMode.OFF なら null）
+        final ExactMatchMode exactMatchMode;
 
-                // 2. 属性の距離
-                double attrDistance = calculateAttributeDistance(classA, classB);
+        int attributeCount(int c) {
+            return attributeOffsets[c + 1] - attributeOffsets[c];
+        }
 
-                // 3. 座標の距離
-                double coordDistance = calculateCoordinateDistance(classA, classB);
+        /**
+         * 内容の比較に使う、クラス c の属性の語彙表IDを昇順に並べたもの。
+         */
+        int[] sortedAttributeIds(int c) {
+            int[] ids = Arrays.copyOfRange(attributeIds, attributeOffsets[c], attributeOffsets[c + 1]);
+            Arrays.sort(ids);
+            return ids;
+        }
 
-                // 4. 総合距離
-                double totalDistance = (nameDistance * W_NAME) +
-                                       (attrDistance * W_ATTR) +
-                                       (coordDistance * W_COORD);
+        /**
+         * クラス c とクラス表 other のクラス otherC の名前・属性セット（POSITION なら座標も）が同じかを返す。
+         */
+        boolean sameContent(int c, ClassTable other, int otherC) {
+            if (exactMatchMode == ExactMatchMode.POSITION
+                    && (view.classX(c) != other.view.classX(otherC) || view.classY(c) != other.view.classY(otherC))) {
+                return false;
+            }
+            return view.className(c).equals(other.view.className(otherC))
+                && Arrays.equals(sortedAttributeIds(c), other.sortedAttributeIds(otherC));
+        }
 
-                if (DEBUG_MODE) {
-                    System.out.println("  Comparing with Class B: '" + classB.name + "'");
-                    System.out.println(String.format("    - Name Dist:      %.2f (%.2f * %.2f)", nameDistance * W_NAME, nameDistance, W_NAME));
-                    System.out.println(String.format("    - Attribute Dist: %.2f (%.2f * %.2f)", attrDistance * W_ATTR, attrDistance, W_ATTR));
-                    System.out.println(String.format("    - Coordinate Dist:%.2f (%.2f * %.2f)", coordDistance * W_COORD, coordDistance, W_COORD));
-                    System.out.println(String.format("    -> Total Dist:    %.4f", totalDistance));
+        ClassTable(DiagramView view, AttributeVocabulary vocabulary, boolean useContentHashes, ExactMatchMode exactMatchMode) {
+            this.view = view;
+            this.nameGrams = new QGramIndex(view);
+            int classCount = view.classCount();
+            int attributeCount = 0;
+            for (int c = 0; c < classCount; c++) {
+                attributeCount += view.attributeEnd(c) - view.attributeStart(c);
+            }
+            attributeOffsets = new int[classCount + 1];
+            attributeIds = new int[attributeCount];
+            // 同じ文字列IDは1回だけ語彙表に登録する
+            int[] vocabularyIds = new int[view.stringCount()];
+            Arrays.fill(vocabularyIds, -1);
+            int position = 0;
+            for (int c = 0; c < classCount; c++) {
+                attributeOffsets[c] = position;
+                for (int p = view.attributeStart(c); p < view.attributeEnd(c); p++) {
+                    int stringId = view.attributeId(p);
+                    if (vocabularyIds[stringId] < 0) {
+                        vocabularyIds[stringId] = vocabulary.intern(view.string(stringId));
+                    }
+                    attributeIds[position++] = vocabularyIds[stringId];
                 }
+            }
+            attributeOffsets[classCount] = position;
+            distinctAttributeCounts = new int[classCount];
+            for (int c = 0; c < classCount; c++) {
+                int[] ids = sortedAttributeIds(c);
+                int distinct = 0;
+                for (int i = 0; i < ids.length; i++) {
+                    if (i == 0 || ids[i] != ids[i - 1]) {
+                        distinct++;
+                    }
+                }
+                distinctAttributeCounts[c] = distinct;
+            }
 
-                if (totalDistance < lowestDistance) {
-                    lowestDistance = totalDistance;
-                    bestMatch = classB;
+            this.exactMatchMode = exactMatchMode;
+            if (exactMatchMode != ExactMatchMode.OFF) {
+                // 属性は語彙表のIDで表すので、同じ語彙表を使う表どうしでキーを比べられる
+                exactKeys = new long[classCount];
+                for (int c = 0; c < classCount; c++) {
+                    long key = view.className(c).hashCode();
+                    for (int id : sortedAttributeIds(c)) {
+                        key = key * 0x9E3779B97F4A7C15L + id + 1;
+                    }
+                    if (exactMatchMode == ExactMatchMode.POSITION) {
+                        key = (key * 0x9E3779B97F4A7C15L + view.classX(c)) * 0x9E3779B97F4A7C15L + view.classY(c);
+                    }
+                    exactKeys[c] = key;
                 }
+            } else {
+                exactKeys = null;
             }
 
-            if (bestMatch != null && lowestDistance < DISTANCE_THRESHOLD) {
-                if (DEBUG_MODE) {
-                    System.out.println("  => Best match found: '" + bestMatch.name + "' with distance " + String.format("%.4f", lowestDistance));
+            if (useContentHashes) {
+                contentHashes = new long[classCount];
+                for (int c = 0; c < classCount; c++) {
+                    contentHashes[c] = view.contentHash(c);
                 }
-                matches.put(classA, bestMatch);
-                unmatchedB.remove(bestMatch);
-            } else if (DEBUG_MODE) {
-                System.out.println("  => No suitable match found (lowest distance: " + String.format("%.4f", lowestDistance) + ")");
+            } else {
+                contentHashes = null;
             }
         }
+    }
 
-        return matches;
+    /**
+     * 1つのバージョン（列）とのコスト計算の間、全スレッドから読み取り専用で共有するデータ。
+     * 行（base）の表と語彙表は全バージョンで共通。
+     */
+    private static final class CostContext {
+        final ClassTable rows;
+        final ClassTable columns;
+        final AttributeVocabulary vocabulary;
+        final SpatialGridIndex indexB;
+        final int[] exactColumns;          // 行ごとに、内容が同じで対応付け済みの列（なければ -1）。OFF なら null
+        final boolean[] exactColumnTaken;  // 列ごとに、内容が同じ行と対応付け済みか。OFF なら null
+
+        CostContext(ClassTable rows, ClassTable columns, AttributeVocabulary vocabulary, ExactMatchMode exactMatchMode) {
+            this.rows = rows;
+            this.columns = columns;
+            this.vocabulary = vocabulary;
+            this.indexB = new SpatialGridIndex(columns.view, COORD_SEARCH_RADIUS);
+            if (exactMatchMode == ExactMatchMode.OFF) {
+                this.exactColumns = null;
+                this.exactColumnTaken = null;
+            } else {
+                this.exactColumns = new int[rows.view.classCount()];
+                this.exactColumnTaken = new boolean[columns.view.classCount()];
+                pairExactDuplicates();
+            }
+        }
+
+        /**
+         * キーがA・Bそれぞれで1つしかないクラスどうしのうち、内容が同じで座標の距離が閾値未満のものを対応付ける。
+         * キーの表を1回作って引くだけなので、クラス数に対して線形時間で終わる。
+         */
+        private void pairExactDuplicates() {
+            Arrays.fill(exactColumns, -1);
+            Map<Long, Integer> columnByKey = uniqueKeys(columns.exactKeys);
+            Map<Long, Integer> rowByKey = uniqueKeys(rows.exactKeys);
+            for (int row = 0; row < exactColumns.length; row++) {
+                Integer column = columnByKey.get(rows.exactKeys[row]);
+                if (column == null || column < 0 || rowByKey.get(rows.exactKeys[row]) != row
+                        || !rows.sameContent(row, columns, column)) {
+                    continue;
+                }
+                double coordDistance = calculateCoordinateDistance(rows.view.classX(row), rows.view.classY(row),
+                    columns.view.classX(column), columns.view.classY(column));
+                if (coordDistance < COORD_SEARCH_RADIUS) {
+                    exactColumns[row] = column;
+                    exactColumnTaken[column] = true;
+                }
+            }
+        }
+
+        /**
+         * キーから番号への表を作る。同じキーが複数あるものは -1 にする。
+         */
+        private static Map<Long, Integer> uniqueKeys(long[] keys) {
+            Map<Long, Integer> byKey = new HashMap<>(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                Integer previous = byKey.putIfAbsent(keys[i], i);
+                if (previous != null) {
+                    byKey.put(keys[i], -1);
+                }
+            }
+            return byKey;
+        }
+    }
+
+    /**
+     * 1ブロック分の行の計算結果（行ごとの辺の数と、辺の列・コスト）。
+     */
+    private static final class RowBlock {
+        final int rowCount;
+        final int[] rowEdgeCounts;
+        int[] edgeColumns = new int[16];
+        double[] edgeCosts = new double[16];
+        int edgeCount = 0;
+        long evaluatedPairs = 0;
+        long computedPairs = 0; // evaluatedPairs のうち、キャッシュになく実際に計算したもの
+        long cacheHits = 0;
+        // evaluatedPairs のうち、下限値で除外したもの（段階ごと）
+        long nameLengthPrunedPairs = 0;  // 名前の長さの差
+        long attrCountPrunedPairs = 0;   // 属性の数の差
+        long qgramPrunedPairs = 0;       // 名前のq-gram
+        // computedPairs のうち、正確な距離の計算を途中で打ち切ったもの
+        long nameBudgetPrunedPairs = 0;  // 名前の距離で閾値に達した
+        long attrBudgetPrunedPairs = 0;  // 属性の距離の途中で閾値に達した
+        long exactPairs = 0;       // 内容が同じクラスと対応付け済みで、距離を評価しなかった行の数
+        final StringBuilder debugLog; // 詳細ログが無効なときは null
+
+        RowBlock(int rowCount, boolean verbose) {
+            this.rowCount = rowCount;
+            this.rowEdgeCounts = new int[rowCount];
+            this.debugLog = verbose ? new StringBuilder() : null;
+        }
+
+        void addEdge(int column, double cost) {
+            if (edgeCount == edgeColumns.length) {
+                edgeColumns = Arrays.copyOf(edgeColumns, edgeCount * 2);
+                edgeCosts = Arrays.copyOf(edgeCosts, edgeCount * 2);
+            }
+            edgeColumns[edgeCount] = column;
+            edgeCosts[edgeCount] = cost;
+            edgeCount++;
+        }
     }
 
     /**
      * 2つのクラス名間のレーベンシュタイン距離を計算する。
+     * 上限を超える場合は上限+1を返す（その場合どのみちマッチしない）。
      */
-    private double calculateNameDistance(UmlClass classA, UmlClass classB) {
-        return UmlClass.calculateLevenshteinDistance(classA.name, classB.name);
+    private int calculateNameDistance(String nameA, String nameB, int maxDistance) {
+        return Levenshtein.distance(nameA, nameB, maxDistance);
     }
 
     /**
-     * 2つのクラスの属性セット間の距離を計算する。
+     * 2つのクラスの属性セット間の距離を計算する。属性は語彙表のIDの配列の範囲 [from, to) で受け取る。
      * 各属性について、相手のセット内で最も近い属性との距離を合計する。
+     * 合計が maxDistance を超えた時点で打ち切り、その時点の合計を返す。
      */
-    private double calculateAttributeDistance(UmlClass classA, UmlClass classB) {
-        double totalDistance = 0.0;
-        totalDistance += calculateDirectedAttributeDistance(classA, classB);
-        totalDistance += calculateDirectedAttributeDistance(classB, classA);
-        return totalDistance;
+    private int calculateAttributeDistance(int[] attrsA, int fromA, int toA, int[] attrsB, int fromB, int toB,
+                                           AttributeVocabulary vocabulary, int maxDistance) {
+        int totalDistance = calculateDirectedAttributeDistance(attrsA, fromA, toA, attrsB, fromB, toB, vocabulary, 0, maxDistance);
+        if (totalDistance > maxDistance) {
+            return totalDistance;
+        }
+        return calculateDirectedAttributeDistance(attrsB, fromB, toB, attrsA, fromA, toA, vocabulary, totalDistance, maxDistance);
     }
 
-    private double calculateDirectedAttributeDistance(UmlClass fromClass, UmlClass toClass) {
-        double directedDistance = 0.0;
-        for (String attrFrom : fromClass.attributes) {
-            double minDistanceForAttr = Double.MAX_VALUE;
-            if (toClass.attributes.isEmpty()) {
-                minDistanceForAttr = attrFrom.length(); // 相手が空なら、自身の文字数がそのまま距離
+    private int calculateDirectedAttributeDistance(int[] attrsFrom, int from, int to, int[] attrsTo, int toFrom, int toTo,
+                                                   AttributeVocabulary vocabulary, int distanceSoFar, int maxDistance) {
+        int directedDistance = distanceSoFar;
+        for (int i = from; i < to && directedDistance <= maxDistance; i++) {
+            int attrFrom = attrsFrom[i];
+            int minDistanceForAttr = Integer.MAX_VALUE;
+            if (toFrom == toTo) {
+                minDistanceForAttr = vocabulary.length(attrFrom); // 相手が空なら、自身の文字数がそのまま距離
             } else {
-                for (String attrTo : toClass.attributes) {
-                    int dist = UmlClass.calculateLevenshteinDistance(attrFrom, attrTo);
+                for (int k = toFrom; k < toTo; k++) {
+                    int dist = vocabulary.distance(attrFrom, attrsTo[k]);
                     if (dist < minDistanceForAttr) {
                         minDistanceForAttr = dist;
                     }
@@ -124,7 +1088,7 @@ public class Matcher {
     /**
      * 2つのクラスの座標間のユークリッド距離を計算する。
      */
-    private double calculateCoordinateDistance(UmlClass classA, UmlClass classB) {
-        return Math.sqrt(Math.pow(classA.x - classB.x, 2) + Math.pow(classA.y - classB.y, 2));
+    private static double calculateCoordinateDistance(int xA, int yA, int xB, int yB) {
+        return Math.sqrt(Math.pow(xA - xB, 2) + Math.pow(yA - yB, 2));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,183 @@
+package matching;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * 属性セットのMinHash署名と、署名を帯（band）に分けたLSH（局所性鋭敏型ハッシュ）の索引。
+ *
+ * 署名は bands * rows 個のハッシュ関数それぞれについて、セットの要素のハッシュ値の最小値を並べたもの。
+ * 2つのセットの署名が1つの値で一致する確率はJaccard係数に等しい。署名を rows 個ずつ bands 本の帯に分け、
+ * どれか1本の帯がまるごと一致したセットどうしを候補にすると、Jaccard係数 s のペアが候補になる確率は
+ * 1 - (1 - s^rows)^bands になり、おおよそ {@link #threshold()} を境に急に立ち上がる。
+ * 帯を増やすと再現率が上がり、行を増やすと候補が絞られる。
+ *
+ * ハッシュ関数は固定のシードから作るので、同じ設定なら実行ごとに同じ候補になる。
+ * 構築後は変更しないので、複数のスレッドから同時に使ってよい（{@link Index} は除く）。
+ */
+public class MinHashLsh {
+
+    private static final long SEED = 0x5DEECE66DL;
+
+    private final int bands;
+    private final int rows;
+    private final long[] hashSeeds; // bands * rows 個
+
+    /**
+     * @param bands 帯の数
+     * @param rows 1本の帯に含める署名の値の数
+     */
+    public MinHashLsh(int bands, int rows) {
+        if (bands < 1 || rows < 1) {
+            throw new IllegalArgumentException("bands and rows must be at least 1: " + bands + "x" + rows);
+        }
+        this.bands = bands;
+        this.rows = rows;
+        this.hashSeeds = new long[bands * rows];
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < hashSeeds.length; i++) {
+            hashSeeds[i] = random.nextLong();
+        }
+    }
+
+    /**
+     * "16x4" のような「帯の数x行の数」の形式の文字列から作ります。
+     * @throws IllegalArgumentException 形式が正しくない場合
+     */
+    public static MinHashLsh parse(String spec) {
+        int separator = spec.indexOf('x');
+        if (separator < 0) {
+            throw new IllegalArgumentException("expected BANDSxROWS: " + spec);
+        }
+        return new MinHashLsh(Integer.parseInt(spec.substring(0, separator).trim()),
+            Integer.parseInt(spec.substring(separator + 1).trim()));
+    }
+
+    public int getBands() {
+        return bands;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * 候補になる確率が1/2付近になるJaccard係数の目安 (1/bands)^(1/rows) を返します。
+     */
+    public double threshold() {
+        return Math.pow(1.0 / bands, 1.0 / rows);
+    }
+
+    /**
+     * Jaccard係数が similarity のペアが候補になる確率を返します。
+     */
+    public double candidateProbability(double similarity) {
+        return 1.0 - Math.pow(1.0 - Math.pow(similarity, rows), bands);
+    }
+
+    /**
+     * 要素のハッシュ値の配列の範囲 [from, to) をセットとみなしてMinHash署名を計算します。
+     * 空のセットの署名はすべて Integer.MAX_VALUE になる。
+     * @param elementHashes 要素ごとのハッシュ値（同じ要素には同じ値を使うこと）
+     * @return 長さ bands * rows の署名
+     */
+    public int[] signature(long[] elementHashes, int from, int to) {
+        int[] signature = new int[hashSeeds.length];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int e = from; e < to; e++) {
+            long element = elementHashes[e];
+            for (int i = 0; i < hashSeeds.length; i++) {
+                int value = (int) (mix(element ^ hashSeeds[i]) >>> 33); // 非負の31ビット
+                if (value < signature[i]) {
+                    signature[i] = value;
+                }
+            }
+        }
+        return signature;
+    }
+
+    /**
+     * 要素のハッシュ値を作るときに使う、64ビットの値の混ぜ合わせ（SplitMix64の最終段）。
+     */
+    public static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    public Index newIndex() {
+        return new Index();
+    }
+
+    /**
+     * 署名を帯ごとのバケットに登録し、帯が1本でも一致する要素を引く索引。
+     * 登録は1つのスレッドから行い、登録を終えた後の問い合わせは複数のスレッドから行ってよい。
+     */
+    public final class Index {
+        private final List<Map<Long, int[]>> buckets = new ArrayList<>(); // 帯ごと。配列の先頭はバケット内の要素数
+
+        private Index() {
+            for (int b = 0; b < bands; b++) {
+                buckets.add(new HashMap<>());
+            }
+        }
+
+        /**
+         * 要素を登録します。
+         * @param item 要素の番号
+         * @param signature {@link #signature} で計算した署名
+         */
+        public void add(int item, int[] signature) {
+            for (int b = 0; b < bands; b++) {
+                Long key = bandKey(signature, b);
+                int[] bucket = buckets.get(b).get(key);
+                if (bucket == null) {
+                    bucket = new int[4];
+                } else if (bucket[0] + 1 == bucket.length) {
+                    bucket = Arrays.copyOf(bucket, bucket.length * 2);
+                }
+                bucket[++bucket[0]] = item;
+                buckets.get(b).put(key, bucket);
+            }
+        }
+
+        /**
+         * 署名の帯が1本でも一致する登録済みの要素を、番号の昇順に重複なく返します。
+         */
+        public int[] candidates(int[] signature) {
+            int[] result = new int[0];
+            int size = 0;
+            for (int b = 0; b < bands; b++) {
+                int[] bucket = buckets.get(b).get(bandKey(signature, b));
+                if (bucket == null) {
+                    continue;
+                }
+                if (size + bucket[0] > result.length) {
+                    result = Arrays.copyOf(result, Math.max(result.length * 2, size + bucket[0]));
+                }
+                System.arraycopy(bucket, 1, result, size, bucket[0]);
+                size += bucket[0];
+            }
+            Arrays.sort(result, 0, size);
+            int unique = 0;
+            for (int i = 0; i < size; i++) {
+                if (unique == 0 || result[unique - 1] != result[i]) {
+                    result[unique++] = result[i];
+                }
+            }
+            return Arrays.copyOf(result, unique);
+        }
+
+        private Long bandKey(int[] signature, int band) {
+            long hash = band;
+            for (int r = band * rows; r < (band + 1) * rows; r++) {
+                hash = mix(hash * 31 + signature[r]);
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package matching;
+
+import java.util.Arrays;
+
+import model.DiagramView;
+
+/**
+ * ダイアグラムのクラス名を文字のバイグラム（2-gram）とトライグラム（3-gram）に分解して保持する索引。
+ * q-gramはUTF-16のchar単位で切り出すので、{@link model.Levenshtein} と同じく日本語の名前にも使える。
+ *
+ * 2つの名前の編集距離が k 以下なら、共有するq-gramの数は max(|a|, |b|) - q + 1 - k*q 以上になる（q-gram補題）。
+ * これを使うと、レーベンシュタイン距離を計算する前に、名前の距離だけで閾値に達するペアを
+ * q-gramの共通数の数え上げ（ソート済み配列の突き合わせ）だけで除外できる。
+ * 構築後は変更しないので、複数のスレッドから同時に読んでよい。
+ */
+public class QGramIndex {
+
+    private final int[] nameLengths;
+    // クラスごとのq-gramを、ソート済みのCSR形式で持つ（同じq-gramが複数回現れればその回数だけ並ぶ）
+    private final int[] bigramOffsets;   // クラス数 + 1 個
+    private final int[] bigrams;         // 2文字を (c0 << 16 | c1) に詰めたもの
+    private final int[] trigramOffsets;  // クラス数 + 1 個
+    private final long[] trigrams;       // 3文字を (c0 << 32 | c1 << 16 | c2) に詰めたもの
+
+    /**
+     * @param view 索引に登録するクラスを持つダイアグラム（全クラスを登録する）
+     */
+    public QGramIndex(DiagramView view) {
+        int classCount = view.classCount();
+        nameLengths = new int[classCount];
+        bigramOffsets = new int[classCount + 1];
+        trigramOffsets = new int[classCount + 1];
+        int bigramCount = 0;
+        int trigramCount = 0;
+        for (int c = 0; c < classCount; c++) {
+            int length = view.className(c).length();
+            nameLengths[c] = length;
+            bigramCount += Math.max(0, length - 1);
+            trigramCount += Math.max(0, length - 2);
+        }
+        bigrams = new int[bigramCount];
+        trigrams = new long[trigramCount];
+
+        int bigramPosition = 0;
+        int trigramPosition = 0;
+        for (int c = 0; c < classCount; c++) {
+            String name = view.className(c);
+            bigramOffsets[c] = bigramPosition;
+            trigramOffsets[c] = trigramPosition;
+            for (int i = 0; i + 1 < name.length(); i++) {
+                bigrams[bigramPosition++] = name.charAt(i) << 16 | name.charAt(i + 1);
+            }
+            for (int i = 0; i + 2 < name.length(); i++) {
+                trigrams[trigramPosition++] = (long) name.charAt(i) << 32 | (long) name.charAt(i + 1) << 16 | name.charAt(i + 2);
+            }
+            Arrays.sort(bigrams, bigramOffsets[c], bigramPosition);
+            Arrays.sort(trigrams, trigramOffsets[c], trigramPosition);
+        }
+        bigramOffsets[classCount] = bigramPosition;
+        trigramOffsets[classCount] = trigramPosition;
+    }
+
+    public int nameLength(int c) {
+        return nameLengths[c];
+    }
+
+    /**
+     * このダイアグラムのクラス c と other のクラス otherC の名前が共有するバイグラムの数を返します。
+     */
+    public int sharedBigrams(int c, QGramIndex other, int otherC) {
+        int shared = 0;
+        int i = bigramOffsets[c];
+        int iEnd = bigramOffsets[c + 1];
+        int j = other.bigramOffsets[otherC];
+        int jEnd = other.bigramOffsets[otherC + 1];
+        while (i < iEnd && j < jEnd) {
+            int cmp = Integer.compare(bigrams[i], other.bigrams[j]);
+            if (cmp == 0) {
+                shared++;
+                i++;
+                j++;
+            } else if (cmp < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * このダイアグラムのクラス c と other のクラス otherC の名前が共有するトライグラムの数を返します。
+     */
+    public int sharedTrigrams(int c, QGramIndex other, int otherC) {
+        int shared = 0;
+        int i = trigramOffsets[c];
+        int iEnd = trigramOffsets[c + 1];
+        int j = other.trigramOffsets[otherC];
+        int jEnd = other.trigramOffsets[otherC + 1];
+        while (i < iEnd && j < jEnd) {
+            int cmp = Long.compare(trigrams[i], other.trigrams[j]);
+            if (cmp == 0) {
+                shared++;
+                i++;
+                j++;
+            } else if (cmp < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * 2つの名前の編集距離が maxDistance 以下になり得るかを、q-gram補題で判定します。
+     * false なら編集距離は必ず maxDistance を超える。true でも maxDistance 以下とは限らない。
+     * 必要な共通数が0以下になるバイグラム・トライグラムの判定は、数え上げ自体を省く。
+     */
+    public boolean mayBeWithin(int c, QGramIndex other, int otherC, int maxDistance) {
+        int longer = Math.max(nameLengths[c], other.nameLengths[otherC]);
+        int requiredBigrams = longer - 1 - 2 * maxDistance;
+        if (requiredBigrams > 0 && sharedBigrams(c, other, otherC) < requiredBigrams) {
+            return false;
+        }
+        int requiredTrigrams = longer - 2 - 3 * maxDistance;
+        return requiredTrigrams <= 0 || sharedTrigrams(c, other, otherC) >= requiredTrigrams;
+    }
+}
@@ -0,0 +1,82 @@
+package matching;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import model.DiagramView;
+
+/**
+ * ダイアグラムのクラスの座標(x, y)に対する一様グリッドの空間インデックス。
+ * セルの一辺を探索半径と同じ長さにしておくことで、ある点から半径以内にあるクラスは
+ * 必ずその点を含むセルと周囲8セルのどれかに入っている。
+ * クラスは {@link DiagramView} の番号で登録・返却する。
+ */
+public class SpatialGridIndex {
+
+    private static final int[] EMPTY = new int[0];
+
+    private final double cellSize;
+    private final Map<Long, int[]> cells = new HashMap<>(); // 配列の先頭はセル内のクラス数
+
+    /**
+     * @param view インデックスに登録するクラスを持つダイアグラム（全クラスを登録する）
+     * @param cellSize セルの一辺の長さ（通常は探索半径と同じ値を指定する）
+     */
+    public SpatialGridIndex(DiagramView view, double cellSize) {
+        if (!(cellSize > 0)) {
+            throw new IllegalArgumentException("cellSize must be positive: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        for (int c = 0; c < view.classCount(); c++) {
+            Long key = cellKey(cellOf(view.classX(c)), cellOf(view.classY(c)));
+            int[] cell = cells.get(key);
+            if (cell == null) {
+                cell = new int[4];
+            } else if (cell[0] + 1 == cell.length) {
+                cell = Arrays.copyOf(cell, cell.length * 2);
+            }
+            cell[++cell[0]] = c;
+            cells.put(key, cell);
+        }
+    }
+
+    /**
+     * 指定した座標から半径radius未満にある可能性のあるクラスの番号を返します。
+     * 返されるのは周辺セルに入っているクラスであり、実際の距離による絞り込みは呼び出し側で行う。
+     * 同じセルのクラスは登録した順（番号の昇順）に並ぶ。
+     * @param x 中心のX座標
+     * @param y 中心のY座標
+     * @param radius 探索半径
+     * @return 候補となるクラスの番号
+     */
+    public int[] candidates(int x, int y, double radius) {
+        long minCx = cellOf(x - radius);
+        long maxCx = cellOf(x + radius);
+        long minCy = cellOf(y - radius);
+        long maxCy = cellOf(y + radius);
+        int[] result = EMPTY;
+        int size = 0;
+        for (long cx = minCx; cx <= maxCx; cx++) {
+            for (long cy = minCy; cy <= maxCy; cy++) {
+                int[] cell = cells.get(cellKey(cx, cy));
+                if (cell != null) {
+                    if (size + cell[0] > result.length) {
+                        result = Arrays.copyOf(result, Math.max(result.length * 2, size + cell[0]));
+                    }
+                    System.arraycopy(cell, 1, result, size, cell[0]);
+                    size += cell[0];
+                }
+            }
+        }
+        return size == result.length ? result : Arrays.copyOf(result, size);
+    }
+
+    private long cellOf(double coordinate) {
+        return (long) Math.floor(coordinate / cellSize);
+    }
+
+    private static long cellKey(long cx, long cy) {
+        return (cx << 32) ^ (cy & 0xFFFFFFFFL);
+    }
+}
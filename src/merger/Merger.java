@@ -5,6 +5,7 @@ import java.util.List;
 import diff.Diff;
 import diff.Diff.ChangeType;
 import diff.Diff.ElementType;
+import metrics.Tracer;
 import model.UmlClass;
 import model.UmlDiagram;
 
@@ -13,47 +14,78 @@ import model.UmlDiagram;
  */
 public class Merger {
 
+    private final Tracer tracer;
+
+    public Merger() {
+        this(Tracer.NOOP);
+    }
+
+    /**
+     * @param tracer 計測・詳細ログの出力先
+     */
+    public Merger(Tracer tracer) {
+        this.tracer = tracer;
+    }
+
     /**
      * baseDiagramに差分リストを適用し、マージされた新しいUmlDiagramを返します。
+     * 結果は baseDiagram から派生した書き込み時コピーのダイアグラムで、差分が触れていないクラスと
+     * すべての関係は baseDiagram と共有する（コピーされるのは差分の対象になったクラスだけ）。
+     * baseDiagram はこの呼び出しで凍結され、以降は変更できない。
      * @param baseDiagram 元となるダイアグラム
      * @param versionADiagram 追加するクラスの情報を持つダイアグラム
      * @param diffs 適用する差分のリスト
      * @return マージ後の新しいUmlDiagramオブジェクト
      */
     public UmlDiagram merge(UmlDiagram baseDiagram, UmlDiagram versionADiagram, List<Diff> diffs) {
-        
-        System.out.println("\n--- Running Merger ---");
+        try (Tracer.Span span = tracer.startPhase(Tracer.Phase.MERGE)) {
+            span.setItems(diffs.size());
+            return mergeInternal(baseDiagram, versionADiagram, diffs);
+        }
+    }
+
+    private UmlDiagram mergeInternal(UmlDiagram baseDiagram, UmlDiagram versionADiagram, List<Diff> diffs) {
+        tracer.verbose("\n--- Running Merger ---");
 
-        UmlDiagram mergedDiagram = createDeepCopy(baseDiagram);
+        UmlDiagram mergedDiagram = baseDiagram.derive();
 
         for (Diff diff : diffs) {
-            UmlClass targetClass = mergedDiagram.getClassById(diff.elementId);
-            
+
             if (diff.elementType == ElementType.CLASS) {
                 if (diff.changeType == ChangeType.ADD) {
                     UmlClass classToAdd = versionADiagram.getClassById(diff.elementId);
                     if (classToAdd != null) {
-                        mergedDiagram.addClass(createClassCopy(classToAdd));
-                        System.out.println("Applied ADD: Added class '" + classToAdd.name + "'");
+                        mergedDiagram.addClass(classToAdd.copy());
+                        if (tracer.isVerbose()) {
+                            tracer.verbose("Applied ADD: Added class '" + classToAdd.name + "'");
+                        }
                     }
                 } else if (diff.changeType == ChangeType.CHANGE) {
+                    UmlClass targetClass = mergedDiagram.mutableClass(diff.elementId);
                     if (targetClass != null) {
-                        String newName = diff.description.split("'")[3];
-                        System.out.println("Applied CHANGE: Renamed class '" + targetClass.name + "' to '" + newName + "'");
+                        String newName = diff.newValue;
+                        if (tracer.isVerbose()) {
+                            tracer.verbose("Applied CHANGE: Renamed class '" + targetClass.name + "' to '" + newName + "'");
+                        }
                         targetClass.name = newName;
                     }
                 }
             } 
             else if (diff.elementType == ElementType.ATTRIBUTE) {
+                UmlClass targetClass = mergedDiagram.mutableClass(diff.elementId);
                 if (targetClass != null) {
-                    String attributeName = diff.description.split("'")[1];
+                    String attributeName = diff.attribute;
 
                     if (diff.changeType == ChangeType.ADD) {
                         targetClass.attributes.add(attributeName);
-                        System.out.println("Applied ADD_ATTR: Added attribute '" + attributeName + "' to class '" + targetClass.name + "'");
+                        if (tracer.isVerbose()) {
+                            tracer.verbose("Applied ADD_ATTR: Added attribute '" + attributeName + "' to class '" + targetClass.name + "'");
+                        }
                     } else if (diff.changeType == ChangeType.DELETE) {
                         targetClass.attributes.remove(attributeName);
-                        System.out.println("Applied DELETE_ATTR: Deleted attribute '" + attributeName + "' from class '" + targetClass.name + "'");
+                        if (tracer.isVerbose()) {
+                            tracer.verbose("Applied DELETE_ATTR: Deleted attribute '" + attributeName + "' from class '" + targetClass.name + "'");
+                        }
                     }
                 }
             }
@@ -61,23 +93,4 @@ public class Merger {
         
         return mergedDiagram;
     }
-
-    // クラスのディープコピーを作成するヘルパーメソッド
-    private UmlClass createClassCopy(UmlClass original) {
-        // ★★★ ここを修正 ★★★
-        // 元のクラスの座標(x, y)も引き継いで新しいUmlClassオブジェクトを生成する
-        UmlClass copy = new UmlClass(original.id, original.name, original.x, original.y);
-        for (String attr : original.attributes) {
-            copy.attributes.add(attr);
-        }
-        return copy;
-    }
-
-    private UmlDiagram createDeepCopy(UmlDiagram original) {
-        UmlDiagram copy = new UmlDiagram();
-        for (UmlClass originalClass : original.getClasses()) {
-            copy.addClass(createClassCopy(originalClass));
-        }
-        return copy;
-    }
-}
\ No newline at end of file
+}
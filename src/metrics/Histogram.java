@@ -0,0 +1,98 @@
+package metrics;
+
+/**
+ * 0以上の long 値（所要時間のナノ秒、割り当てたバイト数など）の分布を記録するヒストグラム。
+ *
+ * HDR Histogram と同じく、2のべき乗ごとの区間をさらに一定数の等幅のバケットに分ける（対数線形）。
+ * 128未満の値はそのまま、それ以上の値は上位7ビットで丸めて数えるので、分位点の相対誤差は 1/64 以下で、
+ * 1ナノ秒から数百年まで（long の全範囲）を固定の配列1つで記録できる。
+ *
+ * 複数のスレッドから同時に記録してよい（フェーズの終わりごとに1回記録する程度の頻度を想定し、同期して数える）。
+ */
+public class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;      // 128
+    private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;       // 64
+    // 128未満の値に128個、それ以上の値は2のべき乗の区間（最上位ビットが7〜62）ごとに64個
+    private static final int BUCKET_COUNT = SUB_BUCKET_COUNT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_HALF;
+
+    private final long[] counts = new long[BUCKET_COUNT];
+    private long totalCount = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    /**
+     * 値を1つ記録します。負の値は0として数える。
+     */
+    public synchronized void record(long value) {
+        value = Math.max(0, value);
+        counts[bucketOf(value)]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public synchronized long getCount() {
+        return totalCount;
+    }
+
+    public synchronized long getSum() {
+        return sum;
+    }
+
+    /** 記録した最小値（1つも記録していなければ 0） */
+    public synchronized long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public synchronized long getMax() {
+        return max;
+    }
+
+    /**
+     * 分位点の値を返します。記録した値を小さい順に並べたときの ceil(quantile * 件数) 番目の値が入る
+     * バケットの上端（ただし最大値を超えない）を返すので、真の値以上で、相対誤差は 1/64 以下になる。
+     * @param quantile 0以上1以下の値
+     * @return 分位点の値。1つも記録していなければ 0
+     */
+    public synchronized long getValueAtQuantile(double quantile) {
+        if (!(quantile >= 0 && quantile <= 1)) {
+            throw new IllegalArgumentException("quantile must be in [0, 1]: " + quantile);
+        }
+        if (totalCount == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * totalCount));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKET_COUNT; bucket++) {
+            seen += counts[bucket];
+            if (seen >= rank) {
+                return Math.min(max, highestValueOf(bucket));
+            }
+        }
+        return max;
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKET_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1); // value >> shift は [64, 128)
+        return SUB_BUCKET_COUNT + (shift - 1) * SUB_BUCKET_HALF + (int) (value >>> shift) - SUB_BUCKET_HALF;
+    }
+
+    /**
+     * バケットに入る最大の値。
+     */
+    private static long highestValueOf(int bucket) {
+        if (bucket < SUB_BUCKET_COUNT) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+        long subBucket = (bucket - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+        return ((subBucket + 1) << shift) - 1; // 最後のバケットは 2^63 - 1（long の上限）になる
+    }
+}
@@ -0,0 +1,35 @@
+package metrics;
+
+/**
+ * 何も記録しないTracer。{@link Tracer#NOOP} として使う。
+ */
+final class NoopTracer implements Tracer {
+
+    private static final Span NOOP_SPAN = new Span() {
+        @Override
+        public void setItems(long items) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    @Override
+    public Span startPhase(Phase phase) {
+        return NOOP_SPAN;
+    }
+
+    @Override
+    public void count(Counter counter, long delta) {
+    }
+
+    @Override
+    public boolean isVerbose() {
+        return false;
+    }
+
+    @Override
+    public void verbose(String message) {
+    }
+}
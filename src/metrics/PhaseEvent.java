@@ -0,0 +1,24 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * フェーズ1回分の実行を表すJFRイベント。
+ * JFRで記録していないときは commit されないので、ほとんどコストはかからない。
+ */
+@Name("classdiagram.Phase")
+@Label("Merge Phase")
+@Category("ClassDiagramMerger")
+@Description("One execution of a merge pipeline phase (parse, match, diff, conflict, merge)")
+class PhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Items")
+    long items;
+}
@@ -0,0 +1,123 @@
+package metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+
+/**
+ * RecordingTracer の集計を Prometheus のテキスト形式（exposition format 0.0.4）で書き出す。
+ *
+ * node_exporter の textfile collector などでそのまま読み込める。出力するメトリクスは次のとおり。
+ * <ul>
+ * <li>classdiagram_phase_duration_seconds{phase} : フェーズ1回ごとの所要時間（summary。分位点と _sum, _count）</li>
+ * <li>classdiagram_phase_duration_seconds_max{phase} : フェーズ1回の最大の所要時間</li>
+ * <li>classdiagram_phase_allocated_bytes{phase} : フェーズ1回ごとのヒープの割り当て量（summary）</li>
+ * <li>classdiagram_phase_items_total{phase} : フェーズで処理した要素数の合計</li>
+ * <li>classdiagram_events_total{counter} : {@link Tracer.Counter} の値</li>
+ * </ul>
+ */
+public class PrometheusExporter {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private PrometheusExporter() {
+    }
+
+    /**
+     * 集計をファイルに書き出します。一時ファイルに書いてから置き換えるので、読み込む側が書きかけのファイルを見ることはない。
+     * @param tracer 集計元
+     * @param path 書き出し先
+     */
+    public static void write(RecordingTracer tracer, Path path) throws IOException {
+        Path absolute = path.toAbsolutePath();
+        Path temporary = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        Files.writeString(temporary, format(tracer), StandardCharsets.UTF_8);
+        Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * 集計を Prometheus のテキスト形式の文字列にします。
+     * @param tracer 集計元
+     */
+    public static String format(RecordingTracer tracer) {
+        StringBuilder sb = new StringBuilder();
+
+        header(sb, "classdiagram_phase_duration_seconds", "summary", "Wall-clock time of a single run of each phase.");
+        for (Tracer.Phase phase : Tracer.Phase.values()) {
+            summary(sb, "classdiagram_phase_duration_seconds", "phase", label(phase), tracer.getPhaseDurations(phase), 1e-9);
+        }
+        header(sb, "classdiagram_phase_duration_seconds_max", "gauge", "Longest single run of each phase.");
+        for (Tracer.Phase phase : Tracer.Phase.values()) {
+            sample(sb, "classdiagram_phase_duration_seconds_max", "phase", label(phase), null,
+                tracer.getPhaseDurations(phase).getMax() * 1e-9);
+        }
+
+        header(sb, "classdiagram_phase_allocated_bytes", "summary",
+            "Heap bytes allocated by the JVM during a single run of each phase.");
+        for (Tracer.Phase phase : Tracer.Phase.values()) {
+            summary(sb, "classdiagram_phase_allocated_bytes", "phase", label(phase), tracer.getPhaseAllocations(phase), 1);
+        }
+
+        header(sb, "classdiagram_phase_items_total", "counter", "Items (classes, differences, ...) processed by each phase.");
+        for (Tracer.Phase phase : Tracer.Phase.values()) {
+            sample(sb, "classdiagram_phase_items_total", "phase", label(phase), null, tracer.getPhaseItems(phase));
+        }
+
+        header(sb, "classdiagram_events_total", "counter", "Matching, cache and snapshot counters.");
+        for (Tracer.Counter counter : Tracer.Counter.values()) {
+            sample(sb, "classdiagram_events_total", "counter", label(counter), null, tracer.getCount(counter));
+        }
+        return sb.toString();
+    }
+
+    private static void header(StringBuilder sb, String name, String type, String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    /**
+     * ヒストグラムを summary の分位点と _sum, _count の行にします。
+     * @param scale 記録した値に掛けて単位をそろえる係数（ナノ秒を秒にするなら 1e-9）
+     */
+    private static void summary(StringBuilder sb, String name, String labelName, String labelValue,
+                                Histogram histogram, double scale) {
+        for (double quantile : QUANTILES) {
+            sample(sb, name, labelName, labelValue, number(quantile), histogram.getValueAtQuantile(quantile) * scale);
+        }
+        sample(sb, name + "_sum", labelName, labelValue, null, histogram.getSum() * scale);
+        sample(sb, name + "_count", labelName, labelValue, null, histogram.getCount());
+    }
+
+    private static void sample(StringBuilder sb, String name, String labelName, String labelValue,
+                               String quantile, double value) {
+        sb.append(name).append('{').append(labelName).append("=\"").append(labelValue).append('"');
+        if (quantile != null) {
+            sb.append(",quantile=\"").append(quantile).append('"');
+        }
+        sb.append("} ").append(number(value)).append('\n');
+    }
+
+    /**
+     * 値を Prometheus が読める表記にします（整数はそのまま、それ以外は有効数字9桁で、仮数部の小数点以下の末尾の0を省く）。
+     */
+    private static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        String formatted = String.format(Locale.ROOT, "%.9g", value);
+        int exponent = formatted.indexOf('e');
+        String mantissa = exponent < 0 ? formatted : formatted.substring(0, exponent);
+        if (mantissa.indexOf('.') >= 0) {
+            // 指数部（e-10 など）や小数点のない仮数部（100000000 など）の0は落とさない
+            mantissa = mantissa.replaceFirst("\\.?0+$", "");
+        }
+        return exponent < 0 ? mantissa : mantissa + formatted.substring(exponent);
+    }
+
+    private static String label(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT);
+    }
+}
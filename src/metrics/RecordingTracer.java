@@ -0,0 +1,163 @@
+package metrics;
+
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * フェーズごとの所要時間・実行回数・処理件数とカウンタを記録するTracer。
+ * 各フェーズの実行はJFRイベント（classdiagram.Phase）としても出力する。複数スレッドから使ってよい。
+ *
+ * フェーズ1回ごとの所要時間とヒープの割り当て量は {@link Histogram} にも記録するので、
+ * バッチで同じフェーズを何度も実行した場合の分布（p50, p99 など）が分かる。
+ * 割り当て量は {@link com.sun.management.ThreadMXBean#getTotalThreadAllocatedBytes()} の増分で測る。
+ * 並列に動く作業スレッドの割り当ても含まれる代わりに、複数のフェーズが同時に動いている
+ * （バッチで複数の組を並行して処理している）間は、ほかのフェーズの割り当ても含まれる。
+ */
+public class RecordingTracer implements Tracer {
+
+    private final boolean verbose;
+    private final PrintStream out;
+
+    private final Map<Phase, LongAdder> phaseNanos = new EnumMap<>(Phase.class);
+    private final Map<Phase, LongAdder> phaseRuns = new EnumMap<>(Phase.class);
+    private final Map<Phase, LongAdder> phaseItems = new EnumMap<>(Phase.class);
+    private final Map<Phase, Histogram> phaseDurations = new EnumMap<>(Phase.class);
+    private final Map<Phase, Histogram> phaseAllocations = new EnumMap<>(Phase.class);
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    private final com.sun.management.ThreadMXBean allocationBean; // 割り当て量を測れないJVMでは null
+
+    /**
+     * @param verbose 詳細ログを出力するかどうか
+     * @param out 詳細ログの出力先
+     */
+    public RecordingTracer(boolean verbose, PrintStream out) {
+        this.verbose = verbose;
+        this.out = out;
+        for (Phase phase : Phase.values()) {
+            phaseNanos.put(phase, new LongAdder());
+            phaseRuns.put(phase, new LongAdder());
+            phaseItems.put(phase, new LongAdder());
+            phaseDurations.put(phase, new Histogram());
+            phaseAllocations.put(phase, new Histogram());
+        }
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+        }
+        this.allocationBean = allocationBean();
+    }
+
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported() && bean.isThreadAllocatedMemoryEnabled()) {
+            return bean;
+        }
+        return null;
+    }
+
+    /**
+     * JVM全体でこれまでに割り当てたヒープのバイト数（測れなければ -1）。
+     */
+    private long allocatedBytes() {
+        return allocationBean != null ? allocationBean.getTotalThreadAllocatedBytes() : -1;
+    }
+
+    @Override
+    public Span startPhase(Phase phase) {
+        PhaseEvent event = new PhaseEvent();
+        event.begin();
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        return new Span() {
+            private long items;
+
+            @Override
+            public void setItems(long items) {
+                this.items = items;
+            }
+
+            @Override
+            public void close() {
+                long nanos = System.nanoTime() - start;
+                long allocatedAfter = allocatedBytes();
+                phaseNanos.get(phase).add(nanos);
+                phaseRuns.get(phase).increment();
+                phaseItems.get(phase).add(items);
+                phaseDurations.get(phase).record(nanos);
+                if (allocatedBefore >= 0 && allocatedAfter >= 0) {
+                    phaseAllocations.get(phase).record(allocatedAfter - allocatedBefore);
+                }
+                event.end();
+                if (event.shouldCommit()) {
+                    event.phase = phase.name();
+                    event.items = items;
+                    event.commit();
+                }
+            }
+        };
+    }
+
+    @Override
+    public void count(Counter counter, long delta) {
+        counters.get(counter).add(delta);
+    }
+
+    @Override
+    public boolean isVerbose() {
+        return verbose;
+    }
+
+    @Override
+    public void verbose(String message) {
+        if (verbose) {
+            out.println(message);
+        }
+    }
+
+    public long getPhaseNanos(Phase phase) {
+        return phaseNanos.get(phase).sum();
+    }
+
+    public long getPhaseRuns(Phase phase) {
+        return phaseRuns.get(phase).sum();
+    }
+
+    public long getPhaseItems(Phase phase) {
+        return phaseItems.get(phase).sum();
+    }
+
+    /** フェーズ1回ごとの所要時間（ナノ秒）の分布 */
+    public Histogram getPhaseDurations(Phase phase) {
+        return phaseDurations.get(phase);
+    }
+
+    /** フェーズ1回ごとのヒープの割り当て量（バイト）の分布。JVMが割り当て量を測れなければ空のまま */
+    public Histogram getPhaseAllocations(Phase phase) {
+        return phaseAllocations.get(phase);
+    }
+
+    public long getCount(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    /**
+     * 記録した内容を人が読める形式でまとめます。
+     */
+    public String summary() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("--- Trace Summary ---\n");
+        for (Phase phase : Phase.values()) {
+            Histogram durations = getPhaseDurations(phase);
+            sb.append(String.format("%-9s runs=%d, items=%d, time=%.3f ms, p50=%.3f ms, p99=%.3f ms, allocated=%.1f MB%n",
+                phase, getPhaseRuns(phase), getPhaseItems(phase), getPhaseNanos(phase) / 1_000_000.0,
+                durations.getValueAtQuantile(0.5) / 1_000_000.0, durations.getValueAtQuantile(0.99) / 1_000_000.0,
+                getPhaseAllocations(phase).getSum() / (1024.0 * 1024.0)));
+        }
+        for (Counter counter : Counter.values()) {
+            sb.append(String.format("%-18s %d%n", counter, getCount(counter)));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,72 @@
+package metrics;
+
+/**
+ * マージ処理の各フェーズの計測と、詳細ログの出力先を抽象化したインターフェース。
+ *
+ * 既定の {@link #NOOP} は何もしないので、計測を有効にしない限りコストはかからない。
+ * 詳細ログ（クラスのペアごとの距離の内訳など）は文字列の組み立て自体が重いため、
+ * 呼び出し側で {@link #isVerbose()} を確認してから組み立てること。
+ */
+public interface Tracer {
+
+    /** 何も記録しないTracer */
+    Tracer NOOP = new NoopTracer();
+
+    /**
+     * 計測対象のフェーズ。
+     */
+    enum Phase {
+        PARSE,
+        MATCH,
+        DIFF,
+        CONFLICT,
+        MERGE
+    }
+
+    /**
+     * 集計するカウンタ。
+     */
+    enum Counter {
+        PAIRS_EVALUATED,    // 座標の半径内にあり、評価したクラスのペア数（キャッシュから得たものを含む）
+        PAIRS_PRUNED,       // 空間インデックスや枝刈りによって距離の計算を省いたペア数
+        LEVENSHTEIN_CALLS,  // 実際に行ったレーベンシュタイン距離の計算回数
+        // PAIRS_EVALUATED のうち、距離の下限が閾値に達したため正確な距離の計算を省いたペア数（判定する順に並べる）
+        NAME_LENGTH_PRUNED, // 座標の距離 + 名前の長さの差で閾値に達した
+        ATTR_COUNT_PRUNED,  // さらに属性の数の差による下限を加えて閾値に達した
+        NAME_QGRAM_PRUNED,  // 名前のq-gram補題で、名前の距離が残りを使い切ると分かった
+        // 正確な距離の計算を始めたペアのうち、途中で閾値に達して打ち切ったペア数
+        NAME_BUDGET_PRUNED, // 名前のレーベンシュタイン距離が残りを使い切った（属性の距離は計算しない）
+        ATTR_BUDGET_PRUNED, // 属性の距離の途中までの和で閾値に達した
+        EXACT_MATCHES,      // 距離を計算せず、内容が同じクラスどうしとして対応付けた数
+        LSH_CANDIDATES,     // 属性のMinHash/LSHで候補になった、対応の残ったクラスのペア数
+        LSH_RESCUED,        // 割り当ての後、属性の重なりで対応付けたクラス数
+        MATCH_CACHE_HITS,   // MatchCache から距離を得られたペア数
+        MATCH_CACHE_MISSES, // MatchCache になく、距離を計算したペア数
+        SNAPSHOT_HITS,      // テキストを解釈せずにスナップショットから読み込んだファイル数
+        SNAPSHOT_MISSES     // スナップショットがない・古いため、テキストを解釈したファイル数
+    }
+
+    /**
+     * 1回のフェーズ実行を表す区間。try-with-resources で閉じると計測が終わる。
+     */
+    interface Span extends AutoCloseable {
+
+        /** このフェーズで処理した要素数（クラス数・差分数など）を記録する */
+        void setItems(long items);
+
+        @Override
+        void close();
+    }
+
+    /** フェーズの計測を開始します。 */
+    Span startPhase(Phase phase);
+
+    /** カウンタに値を加算します。 */
+    void count(Counter counter, long delta);
+
+    /** 詳細ログを出力するかどうか */
+    boolean isVerbose();
+
+    /** 詳細ログを1行出力します。{@link #isVerbose()} が false の場合は何もしない。 */
+    void verbose(String message);
+}
@@ -0,0 +1,300 @@
+package model;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * クラス図を列指向（struct-of-arrays）で保持する、変更できない {@link DiagramView} の実装。
+ *
+ * クラスごとのオブジェクトや属性の HashSet を持たず、座標は int 配列、名前と属性は文字列表の番号、
+ * 属性の並びは全クラス分を1つの int 配列にまとめたCSR形式で持つ。同じ名前・属性の文字列は1つだけ保持する。
+ * 関係の端点は {@link Builder#build()} で一度だけクラスの番号に解決して int 配列で持つ（クラスIDの文字列は出力用）。
+ * 10万クラス規模のダイアグラムでも、クラスあたりのオーバーヘッドは数十バイトで済み、
+ * マッチングの内側のループは配列を順に読むだけになる。
+ *
+ * インスタンスは変更できないので、複数のスレッドから同時に読んでよい。
+ */
+public final class ColumnarDiagram implements DiagramView {
+
+    private final String[] classIds;
+    private final int[] nameIds;
+    private final int[] xs;
+    private final int[] ys;
+    private final int[] attributeOffsets; // クラス数 + 1 個
+    private final int[] attributeIds;
+    private final int[] classIdSlots; // クラスIDの開番地法のハッシュ表。クラス番号 + 1 を入れる（0 は空き）
+
+    private final String[] relationshipIds;
+    private final int[] relationshipSources; // 始点のクラス番号（そのIDのクラスがなければ -1）
+    private final int[] relationshipTargets;
+    private final int[] relationshipTypeIds;
+    // 端点のクラスがない関係の、書かれていたクラスID（関係の番号 → ID。ほとんどの図では空）
+    private final Map<Integer, String> danglingSourceIds = new HashMap<>();
+    private final Map<Integer, String> danglingTargetIds = new HashMap<>();
+
+    private final String[] strings;
+
+    private ColumnarDiagram(Builder builder) {
+        int classCount = builder.classCount;
+        this.classIds = Arrays.copyOf(builder.classIds, classCount);
+        this.nameIds = Arrays.copyOf(builder.nameIds, classCount);
+        this.xs = Arrays.copyOf(builder.xs, classCount);
+        this.ys = Arrays.copyOf(builder.ys, classCount);
+        this.attributeOffsets = Arrays.copyOf(builder.attributeOffsets, classCount + 1);
+        this.attributeIds = Arrays.copyOf(builder.attributeIds, builder.attributeOffsets[classCount]);
+        this.classIdSlots = new int[Integer.highestOneBit(Math.max(1, classCount)) * 4];
+        for (int c = 0; c < classCount; c++) {
+            int slot = slotOf(classIds[c]);
+            while (classIdSlots[slot] != 0) {
+                slot = (slot + 1) & (classIdSlots.length - 1);
+            }
+            classIdSlots[slot] = c + 1;
+        }
+
+        int relationshipCount = builder.relationshipCount;
+        this.relationshipIds = Arrays.copyOf(builder.relationshipIds, relationshipCount);
+        this.relationshipSources = new int[relationshipCount];
+        this.relationshipTargets = new int[relationshipCount];
+        for (int r = 0; r < relationshipCount; r++) {
+            relationshipSources[r] = indexOfClass(builder.relationshipSourceIds[r]);
+            if (relationshipSources[r] < 0) {
+                danglingSourceIds.put(r, builder.relationshipSourceIds[r]);
+            }
+            relationshipTargets[r] = indexOfClass(builder.relationshipTargetIds[r]);
+            if (relationshipTargets[r] < 0) {
+                danglingTargetIds.put(r, builder.relationshipTargetIds[r]);
+            }
+        }
+        this.relationshipTypeIds = Arrays.copyOf(builder.relationshipTypeIds, relationshipCount);
+
+        this.strings = Arrays.copyOf(builder.strings, builder.stringCount);
+    }
+
+    /**
+     * UmlDiagramの現在の内容を、{@link UmlDiagram#getClasses()} / {@link UmlDiagram#getRelationships()}
+     * の順番のまま列指向に変換します。変換後にUmlDiagramを変更しても反映されない。
+     * 変更しないUmlDiagramに対しては、i 番目のクラスが getClasses() の i 番目の要素に対応する。
+     */
+    public static ColumnarDiagram of(UmlDiagram diagram) {
+        Builder builder = new Builder();
+        for (UmlClass umlClass : diagram.getClasses()) {
+            builder.addClass(umlClass.id, umlClass.name, umlClass.x, umlClass.y, umlClass.attributes);
+        }
+        for (UmlRelationship relationship : diagram.getRelationships()) {
+            builder.addRelationship(relationship.id, relationship.sourceClassId, relationship.targetClassId, relationship.type);
+        }
+        return builder.build();
+    }
+
+    @Override
+    public int classCount() {
+        return classIds.length;
+    }
+
+    @Override
+    public String classId(int c) {
+        return classIds[c];
+    }
+
+    @Override
+    public int classNameId(int c) {
+        return nameIds[c];
+    }
+
+    @Override
+    public String className(int c) {
+        return strings[nameIds[c]];
+    }
+
+    @Override
+    public int classX(int c) {
+        return xs[c];
+    }
+
+    @Override
+    public int classY(int c) {
+        return ys[c];
+    }
+
+    @Override
+    public int attributeStart(int c) {
+        return attributeOffsets[c];
+    }
+
+    @Override
+    public int attributeEnd(int c) {
+        return attributeOffsets[c + 1];
+    }
+
+    @Override
+    public int attributeId(int position) {
+        return attributeIds[position];
+    }
+
+    @Override
+    public int indexOfClass(String classId) {
+        for (int slot = slotOf(classId); classIdSlots[slot] != 0; slot = (slot + 1) & (classIdSlots.length - 1)) {
+            int c = classIdSlots[slot] - 1;
+            if (classIds[c].equals(classId)) {
+                return c;
+            }
+        }
+        return -1;
+    }
+
+    private int slotOf(String classId) {
+        int h = classId.hashCode() * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (classIdSlots.length - 1);
+    }
+
+    @Override
+    public String string(int stringId) {
+        return strings[stringId];
+    }
+
+    @Override
+    public int stringCount() {
+        return strings.length;
+    }
+
+    @Override
+    public int relationshipCount() {
+        return relationshipIds.length;
+    }
+
+    @Override
+    public String relationshipId(int r) {
+        return relationshipIds[r];
+    }
+
+    @Override
+    public int relationshipSource(int r) {
+        return relationshipSources[r];
+    }
+
+    @Override
+    public int relationshipTarget(int r) {
+        return relationshipTargets[r];
+    }
+
+    @Override
+    public String relationshipSourceId(int r) {
+        int c = relationshipSources[r];
+        return c >= 0 ? classIds[c] : danglingSourceIds.get(r);
+    }
+
+    @Override
+    public String relationshipTargetId(int r) {
+        int c = relationshipTargets[r];
+        return c >= 0 ? classIds[c] : danglingTargetIds.get(r);
+    }
+
+    @Override
+    public String relationshipType(int r) {
+        return strings[relationshipTypeIds[r]];
+    }
+
+    /**
+     * i 番目のクラスを新しいUmlClassとして取り出します。
+     */
+    public UmlClass toUmlClass(int c) {
+        UmlClass umlClass = new UmlClass(classIds[c], strings[nameIds[c]], xs[c], ys[c]);
+        for (int p = attributeOffsets[c]; p < attributeOffsets[c + 1]; p++) {
+            umlClass.attributes.add(strings[attributeIds[p]]);
+        }
+        return umlClass;
+    }
+
+    /**
+     * クラスと関係を追加しながらColumnarDiagramを組み立てるビルダー。
+     * クラスと関係は追加した順に番号が振られる。関係の端点のクラスは関係より後に追加してもよい
+     * （{@link #build()} でクラスの番号に解決する）。{@link #build()} の後にビルダーを使ってはならない。
+     */
+    public static class Builder {
+        private String[] classIds = new String[16];
+        private int[] nameIds = new int[16];
+        private int[] xs = new int[16];
+        private int[] ys = new int[16];
+        private int[] attributeOffsets = new int[17];
+        private int[] attributeIds = new int[16];
+        private int classCount = 0;
+        private final Map<String, Integer> classIndex = new HashMap<>();
+
+        private String[] relationshipIds = new String[16];
+        private String[] relationshipSourceIds = new String[16];
+        private String[] relationshipTargetIds = new String[16];
+        private int[] relationshipTypeIds = new int[16];
+        private int relationshipCount = 0;
+
+        private String[] strings = new String[16];
+        private int stringCount = 0;
+        private final Map<String, Integer> stringIds = new HashMap<>();
+
+        /**
+         * クラスを追加します。
+         * @throws IllegalArgumentException 同じIDのクラスがすでにある場合
+         */
+        public Builder addClass(String id, String name, int x, int y, Collection<String> attributes) {
+            if (classIndex.putIfAbsent(id, classCount) != null) {
+                throw new IllegalArgumentException("duplicate class id: " + id);
+            }
+            if (classCount == classIds.length) {
+                int capacity = classCount * 2;
+                classIds = Arrays.copyOf(classIds, capacity);
+                nameIds = Arrays.copyOf(nameIds, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                attributeOffsets = Arrays.copyOf(attributeOffsets, capacity + 1);
+            }
+            classIds[classCount] = id;
+            nameIds[classCount] = intern(name);
+            xs[classCount] = x;
+            ys[classCount] = y;
+            int position = attributeOffsets[classCount];
+            if (position + attributes.size() > attributeIds.length) {
+                attributeIds = Arrays.copyOf(attributeIds, Math.max(attributeIds.length * 2, position + attributes.size()));
+            }
+            for (String attribute : attributes) {
+                attributeIds[position++] = intern(attribute);
+            }
+            classCount++;
+            attributeOffsets[classCount] = position;
+            return this;
+        }
+
+        public Builder addRelationship(String id, String sourceClassId, String targetClassId, String type) {
+            if (relationshipCount == relationshipIds.length) {
+                int capacity = relationshipCount * 2;
+                relationshipIds = Arrays.copyOf(relationshipIds, capacity);
+                relationshipSourceIds = Arrays.copyOf(relationshipSourceIds, capacity);
+                relationshipTargetIds = Arrays.copyOf(relationshipTargetIds, capacity);
+                relationshipTypeIds = Arrays.copyOf(relationshipTypeIds, capacity);
+            }
+            relationshipIds[relationshipCount] = id;
+            relationshipSourceIds[relationshipCount] = sourceClassId;
+            relationshipTargetIds[relationshipCount] = targetClassId;
+            relationshipTypeIds[relationshipCount] = intern(type);
+            relationshipCount++;
+            return this;
+        }
+
+        public ColumnarDiagram build() {
+            return new ColumnarDiagram(this);
+        }
+
+        private int intern(String value) {
+            Integer id = stringIds.get(value);
+            if (id == null) {
+                id = stringCount;
+                stringIds.put(value, id);
+                if (stringCount == strings.length) {
+                    strings = Arrays.copyOf(strings, stringCount * 2);
+                }
+                strings[stringCount++] = value;
+            }
+            return id;
+        }
+    }
+}
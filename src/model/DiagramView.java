@@ -0,0 +1,88 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * クラス図を読み取り専用で参照するためのインターフェース。
+ *
+ * クラスと関係は 0 から始まる番号で参照する。クラス名と属性は文字列表の番号（文字列ID）で表し、
+ * 同じ文字列には同じIDが振られる。クラス c の属性は、位置 {@link #attributeStart(int)} から
+ * {@link #attributeEnd(int)} の手前までに並ぶ（CSR形式）。関係の端点もクラスの番号で参照する。
+ * MatcherやDiffEngineはこのインターフェースを通してダイアグラムを読む。
+ * 実装は {@link ColumnarDiagram} で、UmlDiagram からは {@link ColumnarDiagram#of(UmlDiagram)} で作る。
+ */
+public interface DiagramView {
+
+    int classCount();
+
+    String classId(int c);
+
+    int classNameId(int c);
+
+    default String className(int c) {
+        return string(classNameId(c));
+    }
+
+    int classX(int c);
+
+    int classY(int c);
+
+    /** クラス c の最初の属性の位置 */
+    int attributeStart(int c);
+
+    /** クラス c の最後の属性の次の位置 */
+    int attributeEnd(int c);
+
+    /** 位置 position にある属性の文字列ID */
+    int attributeId(int position);
+
+    default String attribute(int position) {
+        return string(attributeId(position));
+    }
+
+    /**
+     * クラスIDに対応するクラスの番号を返します。
+     * @return クラスの番号。そのIDのクラスがなければ -1
+     */
+    int indexOfClass(String classId);
+
+    String string(int stringId);
+
+    int stringCount();
+
+    int relationshipCount();
+
+    String relationshipId(int r);
+
+    /**
+     * 関係 r の始点のクラス番号を返します。
+     * @return クラスの番号。始点のIDのクラスがなければ -1
+     */
+    int relationshipSource(int r);
+
+    /**
+     * 関係 r の終点のクラス番号を返します。
+     * @return クラスの番号。終点のIDのクラスがなければ -1
+     */
+    int relationshipTarget(int r);
+
+    /** 関係 r の始点のクラスID（出力用。始点のクラスがなくても書かれていたIDを返す） */
+    String relationshipSourceId(int r);
+
+    /** 関係 r の終点のクラスID（出力用。終点のクラスがなくても書かれていたIDを返す） */
+    String relationshipTargetId(int r);
+
+    String relationshipType(int r);
+
+    /**
+     * クラス c の内容ハッシュを返します。同じ内容の {@link UmlClass#contentHash()} と同じ値になる。
+     */
+    default long contentHash(int c) {
+        String[] sorted = new String[attributeEnd(c) - attributeStart(c)];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = attribute(attributeStart(c) + i);
+        }
+        Arrays.sort(sorted);
+        return UmlClass.contentHash(className(c), sorted, classX(c), classY(c));
+    }
+}
@@ -0,0 +1,240 @@
+package model;
+
+import java.util.Arrays;
+
+/**
+ * レーベンシュタイン距離（編集距離）の計算エンジン。
+ * 上限値（cutoff）を受け取り、距離がそれを超えることが確定した時点で計算を打ち切ります。
+ *
+ * <ul>
+ *   <li>短い方の文字列が64文字以下の場合は、Myersのビット並列アルゴリズムで計算する。</li>
+ *   <li>それより長い場合は、対角線から cutoff 以内の帯だけを計算する（Ukkonenの帯状DP）。</li>
+ *   <li>作業用の配列はスレッドごとに再利用し、呼び出しごとのメモリ確保を行わない。</li>
+ * </ul>
+ *
+ * 文字の比較は従来の実装と同じく {@code charAt} 単位（UTF-16のchar単位）で行うため、
+ * 日本語のクラス名も1文字ずつ正しく比較されます。
+ */
+public final class Levenshtein {
+
+    private static final int MYERS_MAX_LENGTH = 64;
+
+    private static final ThreadLocal<Buffers> BUFFERS = ThreadLocal.withInitial(Buffers::new);
+
+    private Levenshtein() {
+    }
+
+    /**
+     * 2つの文字列間のレーベンシュタイン距離を計算します。
+     * @param s1 文字列1
+     * @param s2 文字列2
+     * @return 編集距離
+     */
+    public static int distance(String s1, String s2) {
+        return distance(s1, s2, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 上限付きでレーベンシュタイン距離を計算します。
+     * @param s1 文字列1
+     * @param s2 文字列2
+     * @param maxDistance 距離の上限（0以上）
+     * @return 距離が maxDistance 以下ならその値、超える場合は maxDistance + 1
+     */
+    public static int distance(String s1, String s2, int maxDistance) {
+        if (maxDistance < 0) {
+            throw new IllegalArgumentException("maxDistance must not be negative: " + maxDistance);
+        }
+        // s1 を短い方にそろえる
+        if (s1.length() > s2.length()) {
+            String tmp = s1;
+            s1 = s2;
+            s2 = tmp;
+        }
+
+        // 共通の接頭辞・接尾辞は距離に影響しないので取り除く
+        int start = 0;
+        int end1 = s1.length();
+        int end2 = s2.length();
+        while (start < end1 && s1.charAt(start) == s2.charAt(start)) {
+            start++;
+        }
+        while (end1 > start && s1.charAt(end1 - 1) == s2.charAt(end2 - 1)) {
+            end1--;
+            end2--;
+        }
+        int len1 = end1 - start;
+        int len2 = end2 - start;
+
+        // 距離は長い方の文字列長を超えないので、上限もそこで頭打ちにしてよい
+        int k = Math.min(maxDistance, len2);
+        if (len2 - len1 > k) {
+            return k + 1;
+        }
+        if (len1 == 0) {
+            return len2;
+        }
+        if (len1 <= MYERS_MAX_LENGTH) {
+            return myers(s1, start, len1, s2, start, len2, k);
+        }
+        return banded(s1, start, len1, s2, start, len2, k);
+    }
+
+    /**
+     * Myersのビット並列アルゴリズム（Hyyröの定式化）。パターン（s1側）は64文字以下であること。
+     */
+    private static int myers(String p, int pOff, int m, String t, int tOff, int n, int k) {
+        Buffers buf = BUFFERS.get();
+        buf.beginPattern();
+        for (int i = 0; i < m; i++) {
+            buf.orMask(p.charAt(pOff + i), 1L << i);
+        }
+
+        long pv = ~0L;
+        long mv = 0L;
+        long last = 1L << (m - 1);
+        int score = m;
+        int result = -1;
+        for (int j = 0; j < n; j++) {
+            long eq = buf.mask(t.charAt(tOff + j));
+            long xv = eq | mv;
+            long xh = (((eq & pv) + pv) ^ pv) | eq;
+            long ph = mv | ~(xh | pv);
+            long mh = pv & xh;
+            if ((ph & last) != 0) {
+                score++;
+            } else if ((mh & last) != 0) {
+                score--;
+            }
+            // 残りの列で1列につき最大1しか減らないので、それでも上限を超えるなら打ち切る
+            if (score - (n - j - 1) > k) {
+                result = k + 1;
+                break;
+            }
+            ph = (ph << 1) | 1L;
+            mh = mh << 1;
+            pv = mh | ~(xv | ph);
+            mv = ph & xv;
+        }
+        buf.endPattern(p, pOff, m);
+        if (result >= 0) {
+            return result;
+        }
+        return score > k ? k + 1 : score;
+    }
+
+    /**
+     * 対角線から k 以内のセルだけを計算する帯状DP。行バッファはスレッドごとに再利用する。
+     */
+    private static int banded(String s1, int off1, int len1, String s2, int off2, int len2, int k) {
+        Buffers buf = BUFFERS.get();
+        int[] prev = buf.row(0, len2 + 1);
+        int[] cur = buf.row(1, len2 + 1);
+        int big = k + 1;
+
+        for (int j = 0; j <= len2; j++) {
+            prev[j] = j <= k ? j : big;
+        }
+        for (int i = 1; i <= len1; i++) {
+            int lo = Math.max(1, i - k);
+            int hi = Math.min(len2, i + k);
+            cur[0] = i <= k ? i : big;
+            if (lo > 1) {
+                cur[lo - 1] = big;
+            }
+            int rowMin = lo == 1 ? cur[0] : big;
+            char c1 = s1.charAt(off1 + i - 1);
+            for (int j = lo; j <= hi; j++) {
+                int cost = c1 == s2.charAt(off2 + j - 1) ? 0 : 1;
+                int value = Math.min(prev[j - 1] + cost, Math.min(prev[j], cur[j - 1]) + 1);
+                if (value > big) {
+                    value = big;
+                }
+                cur[j] = value;
+                if (value < rowMin) {
+                    rowMin = value;
+                }
+            }
+            if (hi < len2) {
+                cur[hi + 1] = big;
+            }
+            // どの編集経路もこの行を通過し、コストは減らないので、行の最小値が上限を超えたら打ち切る
+            if (rowMin > k) {
+                return big;
+            }
+            int[] tmp = prev;
+            prev = cur;
+            cur = tmp;
+        }
+        return Math.min(prev[len2], big);
+    }
+
+    /**
+     * スレッドごとに再利用する作業領域。
+     */
+    private static final class Buffers {
+        // 0x00-0xFF の文字は直接引きの表、それ以外（かな・漢字など）は小さな開番地法のハッシュ表で持つ
+        private final long[] latinMasks = new long[256];
+        private final char[] wideKeys = new char[128];
+        private final long[] wideMasks = new long[128];
+        private final int[] wideStamps = new int[128];
+        private int stamp = 0;
+        private final int[][] rows = new int[2][64];
+
+        void beginPattern() {
+            stamp++;
+            if (stamp == 0) {
+                Arrays.fill(wideStamps, 0);
+                stamp = 1;
+            }
+        }
+
+        void orMask(char c, long bit) {
+            if (c < 256) {
+                latinMasks[c] |= bit;
+                return;
+            }
+            int slot = c & 127;
+            while (wideStamps[slot] == stamp && wideKeys[slot] != c) {
+                slot = (slot + 1) & 127;
+            }
+            if (wideStamps[slot] != stamp) {
+                wideStamps[slot] = stamp;
+                wideKeys[slot] = c;
+                wideMasks[slot] = 0L;
+            }
+            wideMasks[slot] |= bit;
+        }
+
+        long mask(char c) {
+            if (c < 256) {
+                return latinMasks[c];
+            }
+            int slot = c & 127;
+            while (wideStamps[slot] == stamp) {
+                if (wideKeys[slot] == c) {
+                    return wideMasks[slot];
+                }
+                slot = (slot + 1) & 127;
+            }
+            return 0L;
+        }
+
+        void endPattern(String p, int off, int m) {
+            // 直接引きの表は使った文字の分だけ戻す（ハッシュ表はstampの更新で無効になる）
+            for (int i = 0; i < m; i++) {
+                char c = p.charAt(off + i);
+                if (c < 256) {
+                    latinMasks[c] = 0L;
+                }
+            }
+        }
+
+        int[] row(int index, int length) {
+            if (rows[index].length < length) {
+                rows[index] = new int[Math.max(length, rows[index].length * 2)];
+            }
+            return rows[index];
+        }
+    }
+}
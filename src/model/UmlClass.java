@@ -1,5 +1,6 @@
 package model;
 
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -14,6 +15,9 @@ public class UmlClass {
     public final int x; // ★追加: X座標
     public final int y; // ★追加: Y座標
 
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
     public UmlClass(String id, String name, int x, int y) { // ★コンストラクタを修正
         this.id = id;
         this.name = name;
@@ -22,6 +26,58 @@ public class UmlClass {
         this.attributes = new HashSet<>();
     }
 
+    /**
+     * 同じID・名前・座標・属性を持つ新しいUmlClassを作成します。属性の集合はコピーされる。
+     * @return このクラスのコピー
+     */
+    public UmlClass copy() {
+        UmlClass copy = new UmlClass(id, name, x, y);
+        copy.attributes.addAll(attributes);
+        return copy;
+    }
+
+    /**
+     * 名前・属性（順序によらない）・座標から計算した64ビットのハッシュ値を返します。
+     * IDは含めない。同じ内容なら実行をまたいでも同じ値になるので、永続化するキャッシュのキーに使える。
+     * @return 内容のハッシュ値（FNV-1a）
+     */
+    public long contentHash() {
+        String[] sorted = attributes.toArray(new String[0]);
+        Arrays.sort(sorted);
+        return contentHash(name, sorted, x, y);
+    }
+
+    /**
+     * {@link #contentHash()} と同じ値を、UmlClassを作らずに計算します。
+     * @param sortedAttributes 昇順に並べた属性
+     */
+    public static long contentHash(String name, String[] sortedAttributes, int x, int y) {
+        long hash = FNV_OFFSET_BASIS;
+        hash = fnv(hash, name);
+        for (String attribute : sortedAttributes) {
+            hash = fnv(hash, attribute);
+        }
+        hash = fnv(hash, x);
+        hash = fnv(hash, y);
+        return hash;
+    }
+
+    private static long fnv(long hash, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = fnv(hash, value.charAt(i));
+        }
+        // 区切り（文字列の境界をずらしただけの組み合わせが同じ値にならないようにする）
+        return fnv(hash, 0xFFFF_FFFF);
+    }
+
+    private static long fnv(long hash, int value) {
+        for (int shift = 0; shift < 32; shift += 8) {
+            hash ^= (value >>> shift) & 0xFF;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
     /**
      * このクラスと別のクラスとの間で、属性のJaccard係数を計算します。
      * @param other 比較対象のUmlClassオブジェクト
@@ -42,26 +98,13 @@ public class UmlClass {
 
     /**
      * 2つの文字列間のレーベンシュタイン距離を計算します。
+     * 計算は {@link Levenshtein} に委譲します。
      * @param s1 文字列1
      * @param s2 文字列2
      * @return 編集距離
      */
     public static int calculateLevenshteinDistance(String s1, String s2) {
-        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
-        for (int i = 0; i <= s1.length(); i++) {
-            for (int j = 0; j <= s2.length(); j++) {
-                if (i == 0) {
-                    dp[i][j] = j;
-                } else if (j == 0) {
-                    dp[i][j] = i;
-                } else {
-                    dp[i][j] = Math.min(dp[i - 1][j - 1] 
-                     + (s1.charAt(i - 1) == s2.charAt(j - 1) ? 0 : 1), 
-                     Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1));
-                }
-            }
-        }
-        return dp[s1.length()][s2.length()];
+        return Levenshtein.distance(s1, s2);
     }
 
     @Override
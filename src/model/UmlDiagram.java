@@ -1,70 +1,341 @@
 package model;
 
+import java.util.AbstractCollection;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List; // ★インポート追加
 import java.util.Map;
-import java.util.stream.Collectors; // ★インポート追加
+import java.util.NoSuchElementException;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * クラス図全体を表現するクラス。
  * すべてのUmlClassとUmlRelationshipを格納・管理します。
+ *
+ * {@link #derive()} で作ったダイアグラムは親ダイアグラムの上に重ねた書き込み時コピーの層になり、
+ * 変更していないクラスと関係は親と共有する。変更したい既存クラスは {@link #mutableClass(String)} で
+ * 取り出すと、その時点でこの層にだけコピーされる。
  */
 public class UmlDiagram {
 
+    // 派生元のダイアグラム（派生していなければ null）。派生元は凍結され、以降は変更できない
+    private final UmlDiagram parent;
+    private boolean frozen;
+
+    // この層が持つクラスと関係（派生ダイアグラムでは、親と同じIDのものは親の要素を上書きする）
     private final Map<String, UmlClass> classes;
     private final Map<String, UmlRelationship> relationships;
 
+    // 親の要素を上書きしている数（全体の件数を親の件数から求めるために使う）
+    private int shadowedClasses;
+    private int shadowedRelationships;
+
+    // クラスID → そのクラスを始点／終点とする関係。addRelationship で常に最新に保つ（この層の関係のみ）
+    private final Map<String, List<UmlRelationship>> outgoing;
+    private final Map<String, List<UmlRelationship>> incoming;
+
     public UmlDiagram() {
+        this(null);
+    }
+
+    private UmlDiagram(UmlDiagram parent) {
+        this.parent = parent;
         this.classes = new HashMap<>();
         this.relationships = new HashMap<>();
+        this.outgoing = new HashMap<>();
+        this.incoming = new HashMap<>();
+    }
+
+    /**
+     * このダイアグラムを親とする、書き込み時コピーの派生ダイアグラムを返します。
+     * 派生ダイアグラムの作成にかかる時間とメモリはダイアグラムの大きさによらない。
+     * 呼び出した後、このダイアグラムは凍結され、クラスや関係を追加すると IllegalStateException になる。
+     * 同じダイアグラムから複数の派生ダイアグラムを作り、同時に保持してよい。
+     * @return 新しい派生ダイアグラム
+     */
+    public UmlDiagram derive() {
+        this.frozen = true;
+        return new UmlDiagram(this);
+    }
+
+    /**
+     * 指定されたIDのクラスを、このダイアグラムだけで変更してよい状態で返します。
+     * 親ダイアグラムのクラスであれば、最初の呼び出しでコピーしてこの層に登録する。
+     * getClassById で得たクラスは親と共有されている場合があるため、変更にはこのメソッドを使うこと。
+     * @param id クラスID
+     * @return 変更可能なクラス。存在しなければ null
+     */
+    public UmlClass mutableClass(String id) {
+        checkNotFrozen();
+        UmlClass own = this.classes.get(id);
+        if (own != null || parent == null) {
+            return own;
+        }
+        UmlClass inherited = parent.getClassById(id);
+        if (inherited == null) {
+            return null;
+        }
+        UmlClass copy = inherited.copy();
+        addClass(copy);
+        return copy;
     }
 
     public void addClass(UmlClass umlClass) {
-        this.classes.put(umlClass.id, umlClass);
+        checkNotFrozen();
+        UmlClass previous = this.classes.put(umlClass.id, umlClass);
+        if (previous == null && parent != null && parent.getClassById(umlClass.id) != null) {
+            shadowedClasses++;
+        }
     }
 
     public void addRelationship(UmlRelationship relationship) {
-        this.relationships.put(relationship.id, relationship);
+        checkNotFrozen();
+        UmlRelationship previous = this.relationships.put(relationship.id, relationship);
+        if (previous != null) {
+            // 同じIDの関係を置き換える場合は、古い関係を隣接インデックスから外す
+            removeFromIndex(outgoing, previous.sourceClassId, previous);
+            removeFromIndex(incoming, previous.targetClassId, previous);
+        } else if (parent != null && parent.getRelationshipById(relationship.id) != null) {
+            shadowedRelationships++;
+        }
+        this.outgoing.computeIfAbsent(relationship.sourceClassId, k -> new ArrayList<>()).add(relationship);
+        this.incoming.computeIfAbsent(relationship.targetClassId, k -> new ArrayList<>()).add(relationship);
+    }
+
+    private void checkNotFrozen() {
+        if (frozen) {
+            throw new IllegalStateException("diagram is frozen because derived diagrams share its elements");
+        }
+    }
+
+    private static void removeFromIndex(Map<String, List<UmlRelationship>> index, String classId, UmlRelationship relationship) {
+        List<UmlRelationship> list = index.get(classId);
+        if (list != null) {
+            list.remove(relationship);
+            if (list.isEmpty()) {
+                index.remove(classId);
+            }
+        }
+    }
+
+    /**
+     * 別のダイアグラムのクラスと関係をすべて追加します。同じIDの要素は other のもので上書きされる。
+     * @param other 追加するクラス・関係を持つダイアグラム
+     */
+    public void addAll(UmlDiagram other) {
+        for (UmlClass umlClass : other.getClasses()) {
+            addClass(umlClass);
+        }
+        for (UmlRelationship relationship : other.getRelationships()) {
+            addRelationship(relationship);
+        }
     }
 
     public UmlClass getClassById(String id) {
-        return this.classes.get(id);
+        UmlClass umlClass = this.classes.get(id);
+        if (umlClass == null && parent != null) {
+            return parent.getClassById(id);
+        }
+        return umlClass;
     }
     
     public UmlRelationship getRelationshipById(String id) {
-        return this.relationships.get(id);
+        UmlRelationship relationship = this.relationships.get(id);
+        if (relationship == null && parent != null) {
+            return parent.getRelationshipById(id);
+        }
+        return relationship;
     }
 
+    /**
+     * すべてのクラスを返します。派生ダイアグラムでは親のクラスとこの層のクラスを合わせた読み取り専用ビューになる。
+     */
     public Collection<UmlClass> getClasses() {
-        return this.classes.values();
+        if (parent == null) {
+            return this.classes.values();
+        }
+        return new LayeredView<>(parent.getClasses(), this.classes, c -> c.id,
+            parent.getClasses().size() - shadowedClasses + this.classes.size());
     }
 
+    /**
+     * すべての関係を返します。派生ダイアグラムでは親の関係とこの層の関係を合わせた読み取り専用ビューになる。
+     */
     public Collection<UmlRelationship> getRelationships() {
-        return this.relationships.values();
+        if (parent == null) {
+            return this.relationships.values();
+        }
+        return new LayeredView<>(parent.getRelationships(), this.relationships, r -> r.id,
+            parent.getRelationships().size() - shadowedRelationships + this.relationships.size());
     }
 
     // --- ★ここから下を新規追加 ---
 
     /**
      * 指定されたクラスIDを終点とする（指されている）関係のリストを返します。
+     * 返されるリストは読み取り専用。ルートのダイアグラムでは隣接インデックスのビューで、呼び出しごとにリストを作らないが、
+     * 派生ダイアグラム（{@link #derive()}）では親の関係とこの層の関係を合わせたリストを呼び出しごとに新しく作る。
+     * 派生ダイアグラムで繰り返し辿る場合は {@link #forEachIncoming(String, java.util.function.Consumer)} を使うこと。
      * @param classId 終点となるクラスのID
      * @return 関係(UmlRelationship)のリスト
      */
     public List<UmlRelationship> getIncomingRelationships(String classId) {
-        return relationships.values().stream()
-                .filter(rel -> rel.targetClassId.equals(classId))
-                .collect(Collectors.toList());
+        if (parent != null) {
+            List<UmlRelationship> result = new ArrayList<>();
+            forEachIncoming(classId, result::add);
+            return Collections.unmodifiableList(result);
+        }
+        return Collections.unmodifiableList(incoming.getOrDefault(classId, Collections.emptyList()));
     }
 
     /**
      * 指定されたクラスIDを始点とする（指している）関係のリストを返します。
+     * 返されるリストは読み取り専用。ルートのダイアグラムでは隣接インデックスのビューで、呼び出しごとにリストを作らないが、
+     * 派生ダイアグラム（{@link #derive()}）では親の関係とこの層の関係を合わせたリストを呼び出しごとに新しく作る。
+     * 派生ダイアグラムで繰り返し辿る場合は {@link #forEachOutgoing(String, java.util.function.Consumer)} を使うこと。
      * @param classId 始点となるクラスのID
      * @return 関係(UmlRelationship)のリスト
      */
     public List<UmlRelationship> getOutgoingRelationships(String classId) {
-        return relationships.values().stream()
-                .filter(rel -> rel.sourceClassId.equals(classId))
-                .collect(Collectors.toList());
+        if (parent != null) {
+            List<UmlRelationship> result = new ArrayList<>();
+            forEachOutgoing(classId, result::add);
+            return Collections.unmodifiableList(result);
+        }
+        return Collections.unmodifiableList(outgoing.getOrDefault(classId, Collections.emptyList()));
+    }
+
+    /**
+     * 指定されたクラスを終点とする関係の数（入次数）を返します。
+     */
+    public int getInDegree(String classId) {
+        if (parent != null) {
+            int[] count = new int[1];
+            forEachIncoming(classId, rel -> count[0]++);
+            return count[0];
+        }
+        List<UmlRelationship> list = incoming.get(classId);
+        return list == null ? 0 : list.size();
+    }
+
+    /**
+     * 指定されたクラスを始点とする関係の数（出次数）を返します。
+     */
+    public int getOutDegree(String classId) {
+        if (parent != null) {
+            int[] count = new int[1];
+            forEachOutgoing(classId, rel -> count[0]++);
+            return count[0];
+        }
+        List<UmlRelationship> list = outgoing.get(classId);
+        return list == null ? 0 : list.size();
+    }
+
+    /**
+     * 指定されたクラスを終点とする関係を順に処理します。
+     */
+    public void forEachIncoming(String classId, Consumer<UmlRelationship> action) {
+        if (parent != null) {
+            // 親の関係のうち、この層で同じIDの関係に置き換えられたものは除く
+            parent.forEachIncoming(classId, rel -> {
+                if (!relationships.containsKey(rel.id)) {
+                    action.accept(rel);
+                }
+            });
+        }
+        List<UmlRelationship> list = incoming.get(classId);
+        if (list != null) {
+            for (int i = 0; i < list.size(); i++) {
+                action.accept(list.get(i));
+            }
+        }
+    }
+
+    /**
+     * 指定されたクラスを始点とする関係を順に処理します。
+     */
+    public void forEachOutgoing(String classId, Consumer<UmlRelationship> action) {
+        if (parent != null) {
+            parent.forEachOutgoing(classId, rel -> {
+                if (!relationships.containsKey(rel.id)) {
+                    action.accept(rel);
+                }
+            });
+        }
+        List<UmlRelationship> list = outgoing.get(classId);
+        if (list != null) {
+            for (int i = 0; i < list.size(); i++) {
+                action.accept(list.get(i));
+            }
+        }
+    }
+
+    /**
+     * 指定されたクラスと関係で直接つながっているクラスのIDを順に処理します。
+     * 出ていく関係の終点、入ってくる関係の始点の順に、関係1本につき1回ずつ渡す（重複は除かない）。
+     */
+    public void forEachNeighbor(String classId, Consumer<String> action) {
+        forEachOutgoing(classId, rel -> action.accept(rel.targetClassId));
+        forEachIncoming(classId, rel -> action.accept(rel.sourceClassId));
+    }
+
+    /**
+     * 親の要素のうちこの層で上書きされていないものと、この層の要素を順に返す読み取り専用のコレクション。
+     */
+    private static final class LayeredView<T> extends AbstractCollection<T> {
+        private final Collection<T> inherited;
+        private final Map<String, T> own;
+        private final Function<T, String> idOf;
+        private final int size;
+
+        LayeredView(Collection<T> inherited, Map<String, T> own, Function<T, String> idOf, int size) {
+            this.inherited = inherited;
+            this.own = own;
+            this.idOf = idOf;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private final Iterator<T> inheritedIt = inherited.iterator();
+                private final Iterator<T> ownIt = own.values().iterator();
+                private T next = advance();
+
+                private T advance() {
+                    while (inheritedIt.hasNext()) {
+                        T candidate = inheritedIt.next();
+                        if (!own.containsKey(idOf.apply(candidate))) {
+                            return candidate;
+                        }
+                    }
+                    return ownIt.hasNext() ? ownIt.next() : null;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next != null;
+                }
+
+                @Override
+                public T next() {
+                    if (next == null) {
+                        throw new NoSuchElementException();
+                    }
+                    T result = next;
+                    next = advance();
+                    return result;
+                }
+            };
+        }
     }
-}
\ No newline at end of file
+}
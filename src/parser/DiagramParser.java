@@ -1,17 +1,30 @@
 package parser;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import concurrent.SharedPools;
+import metrics.Tracer;
 import model.UmlClass;
 import model.UmlDiagram;
 import model.UmlRelationship;
 
 /**
  * クラス図のテキストファイルを解釈して、UmlDiagramオブジェクトを生成するクラス。
+ * インスタンスは設定以外の状態を持たないので、複数のスレッドから同時に parse を呼び出してよい。
  */
 public class DiagramParser {
 
@@ -22,6 +35,92 @@ public class DiagramParser {
     private static final Pattern RELATION_PATTERN = 
         Pattern.compile("<(\\d+)>.*?ClassRelationLink\\$<(\\d+)>!<(\\d+)>!([^!]+)!!");
 
+    /**
+     * ファイルの読み込み方式。
+     */
+    public enum Mode {
+        REGEX,     // 全行を読み込んでから正規表現で解釈する（従来の方式）
+        STREAMING  // メモリマップしたファイルを手書きのスキャナで逐次解釈する
+    }
+
+    // 1ファイルをチャンクに分けて並列に読むときの、1チャンクあたりの最小バイト数
+    private static final long MIN_CHUNK_BYTES = 4L << 20;
+
+    private final Mode mode;
+    private final int parallelism;
+    private final ForkJoinPool pool; // 同じ並列度のインスタンスと共有する。parallelism が1のときは使わない（null）
+    private final Tracer tracer;
+    private final boolean useSnapshots;
+
+    public DiagramParser() {
+        this(Mode.STREAMING);
+    }
+
+    public DiagramParser(Mode mode) {
+        this(mode, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param mode ファイルの読み込み方式
+     * @param parallelism 複数ファイル・チャンクの並列読み込みに使うスレッド数（1なら逐次処理）
+     */
+    public DiagramParser(Mode mode, int parallelism) {
+        this(mode, parallelism, Tracer.NOOP);
+    }
+
+    /**
+     * @param mode ファイルの読み込み方式
+     * @param parallelism 複数ファイル・チャンクの並列読み込みに使うスレッド数（1なら逐次処理）
+     * @param tracer 計測の記録先
+     */
+    public DiagramParser(Mode mode, int parallelism, Tracer tracer) {
+        this(mode, parallelism, tracer, false);
+    }
+
+    /**
+     * @param mode ファイルの読み込み方式
+     * @param parallelism 複数ファイル・チャンクの並列読み込みに使うスレッド数（1なら逐次処理）
+     * @param tracer 計測の記録先
+     * @param useSnapshots 読み込んだ結果をテキストファイルの隣にスナップショット（{@link DiagramSnapshot}）として保存し、
+     *                     次回からテキストが変わっていなければスナップショットを読み込む
+     */
+    public DiagramParser(Mode mode, int parallelism, Tracer tracer, boolean useSnapshots) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1: " + parallelism);
+        }
+        this.mode = mode;
+        this.parallelism = parallelism;
+        this.pool = parallelism > 1 ? SharedPools.forParallelism(parallelism) : null;
+        this.tracer = tracer;
+        this.useSnapshots = useSnapshots;
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public boolean isUsingSnapshots() {
+        return useSnapshots;
+    }
+
+    /**
+     * 複数のファイルを並行して読み込み、指定した順番どおりのリストで返します。
+     * @param filePaths 読み込むクラス図ファイルのパス
+     * @return パースされたUmlDiagramオブジェクトのリスト
+     * @throws IOException いずれかのファイルの読み込みに失敗した場合
+     */
+    public List<UmlDiagram> parseAll(List<Path> filePaths) throws IOException {
+        List<Callable<UmlDiagram>> tasks = new ArrayList<>();
+        for (Path filePath : filePaths) {
+            tasks.add(() -> parse(filePath));
+        }
+        return invokeAll(tasks);
+    }
+
     /**
      * 指定されたファイルパスからクラス図データを読み込み、UmlDiagramオブジェクトとして返します。
      * @param filePath 読み込むクラス図ファイルのパス
@@ -29,6 +128,182 @@ public class DiagramParser {
      * @throws IOException ファイルの読み込みに失敗した場合
      */
     public UmlDiagram parse(Path filePath) throws IOException {
+        try (Tracer.Span span = tracer.startPhase(Tracer.Phase.PARSE)) {
+            UmlDiagram diagram = useSnapshots ? parseWithSnapshot(filePath) : parseText(filePath);
+            span.setItems(diagram.getClasses().size() + diagram.getRelationships().size());
+            return diagram;
+        }
+    }
+
+    private UmlDiagram parseText(Path filePath) throws IOException {
+        return mode == Mode.STREAMING ? parseStreaming(filePath) : parseWithRegex(filePath);
+    }
+
+    /**
+     * テキストファイルのサイズと更新時刻がスナップショットに記録されたものと一致すれば、スナップショットから読み込む。
+     * 一致しなければテキストを解釈し、結果をスナップショットとして保存する。
+     * スナップショットが壊れている場合や書き出せない場合は、テキストの解釈結果をそのまま使う。
+     */
+    private UmlDiagram parseWithSnapshot(Path filePath) throws IOException {
+        // 解釈する前の状態を記録する（解釈中にテキストが書き換えられたら、次回は古いスナップショットとして扱われる）
+        BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+        long size = attributes.size();
+        long lastModified = attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        Path snapshotPath = DiagramSnapshot.pathFor(filePath);
+
+        if (Files.exists(snapshotPath)) {
+            try {
+                DiagramSnapshot snapshot = DiagramSnapshot.open(snapshotPath);
+                if (snapshot.isSnapshotOf(size, lastModified)) {
+                    UmlDiagram diagram = snapshot.toDiagram();
+                    tracer.count(Tracer.Counter.SNAPSHOT_HITS, 1);
+                    return diagram;
+                }
+            } catch (IOException | RuntimeException e) {
+                // 壊れたスナップショットは、テキストから作り直して上書きする
+                tracer.verbose("Ignoring unreadable snapshot " + snapshotPath + ": " + e);
+            }
+        }
+
+        tracer.count(Tracer.Counter.SNAPSHOT_MISSES, 1);
+        UmlDiagram diagram = parseText(filePath);
+        try {
+            DiagramSnapshot.write(diagram, snapshotPath, size, lastModified);
+        } catch (IOException e) {
+            tracer.verbose("Could not write snapshot " + snapshotPath + ": " + e);
+        }
+        return diagram;
+    }
+
+    /**
+     * 手書きのスキャナで読み込む。大きなファイルはレコードの区切り（";" + 改行）でチャンクに分け、
+     * チャンクごとに並列に読んだ結果をファイル内の順番どおりに1つのUmlDiagramへまとめる。
+     */
+    private UmlDiagram parseStreaming(Path filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long[] boundaries = findChunkBoundaries(channel);
+            List<Callable<UmlDiagram>> tasks = new ArrayList<>();
+            for (int i = 0; i + 1 < boundaries.length; i++) {
+                long start = boundaries[i];
+                long end = boundaries[i + 1];
+                tasks.add(() -> {
+                    UmlDiagram chunk = new UmlDiagram();
+                    new DiagramScanner().scan(channel, start, end, chunk);
+                    return chunk;
+                });
+            }
+            List<UmlDiagram> chunks = invokeAll(tasks);
+            if (chunks.size() == 1) {
+                return chunks.get(0);
+            }
+            // 同じIDが複数回現れた場合は後のものが優先されるので、チャンクの順番どおりに重ねる
+            UmlDiagram diagram = new UmlDiagram();
+            for (UmlDiagram chunk : chunks) {
+                diagram.addAll(chunk);
+            }
+            return diagram;
+        }
+    }
+
+    /**
+     * ファイルを最大 parallelism 個のチャンクに分ける位置を求める。
+     * 各境界は目安の位置から後ろに向かって最初に見つかった ";" + 改行の直後に置く。
+     * @return 先頭の0と末尾のファイルサイズを含む、昇順の境界位置
+     */
+    private long[] findChunkBoundaries(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int chunkCount = (int) Math.min(parallelism, size / MIN_CHUNK_BYTES);
+        if (chunkCount <= 1) {
+            return new long[] { 0, size };
+        }
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        ByteBuffer window = ByteBuffer.allocate(64 * 1024);
+        for (int i = 1; i < chunkCount; i++) {
+            long from = Math.max(size * i / chunkCount, boundaries.get(boundaries.size() - 1));
+            long boundary = findRecordEnd(channel, from, window);
+            if (boundary >= size) {
+                break;
+            }
+            if (boundary > boundaries.get(boundaries.size() - 1)) {
+                boundaries.add(boundary);
+            }
+        }
+        boundaries.add(size);
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    /**
+     * 位置 from 以降で最初に現れる ";\n" または ";\r\n" の直後の位置を返す。見つからなければファイルサイズ。
+     */
+    private static long findRecordEnd(FileChannel channel, long from, ByteBuffer window) throws IOException {
+        long size = channel.size();
+        int state = 0; // 0: 通常, 1: ';' の直後, 2: ";\r" の直後
+        for (long position = from; position < size; ) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                byte b = window.get(i);
+                if (b == '\n' && state != 0) {
+                    return position + i + 1;
+                }
+                if (b == ';') {
+                    state = 1;
+                } else if (b == '\r' && state == 1) {
+                    state = 2;
+                } else {
+                    state = 0;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    /**
+     * タスクを並列に実行し、結果を渡された順番どおりに返す。
+     */
+    private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+        List<T> results = new ArrayList<>(tasks.size());
+        try {
+            if (pool == null || tasks.size() <= 1) {
+                for (Callable<T> task : tasks) {
+                    results.add(task.call());
+                }
+                return results;
+            }
+            List<ForkJoinTask<T>> forkJoinTasks = new ArrayList<>();
+            for (Callable<T> task : tasks) {
+                forkJoinTasks.add(ForkJoinTask.adapt(task));
+            }
+            if (ForkJoinTask.getPool() == pool) {
+                // parseAll の中から呼ばれた場合は、同じプールの中でそのまま分岐させる
+                ForkJoinTask.invokeAll(forkJoinTasks);
+            } else {
+                pool.invoke(ForkJoinTask.adapt(() -> ForkJoinTask.invokeAll(forkJoinTasks)));
+            }
+            for (ForkJoinTask<T> task : forkJoinTasks) {
+                results.add(task.join());
+            }
+            return results;
+        } catch (Exception e) {
+            // ワーカースレッドで発生したIOExceptionは実行時例外に包まれて届くので、取り出して投げ直す
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            throw new IllegalStateException("failed to parse diagram", e);
+        }
+    }
+
+    private UmlDiagram parseWithRegex(Path filePath) throws IOException {
         UmlDiagram diagram = new UmlDiagram();
         
         for (String line : Files.readAllLines(filePath)) {
@@ -0,0 +1,317 @@
+package parser;
+
+import java.io.IOException;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import model.UmlClass;
+import model.UmlDiagram;
+import model.UmlRelationship;
+
+/**
+ * 正規表現を使わずにクラス図ファイルを読み込む手書きのスキャナ。
+ *
+ * ファイルは一定サイズごとにメモリマップし、UTF-8を一度だけデコードしながら行単位で処理する。
+ * 作業用のバッファは行の長さ程度しか使わないため、数百MBのファイルでもヒープ使用量は増えない。
+ * 1行ごとの解釈は DiagramParser の CLASS_PATTERN / RELATION_PATTERN と同じ結果になるようにしている。
+ */
+public class DiagramScanner {
+
+    private static final int WINDOW_BYTES = 32 << 20;
+    private static final int INITIAL_CHAR_BUFFER = 1 << 16;
+
+    private static final char[] CLASS_TOKEN = "Class$(".toCharArray();
+    private static final char[] RELATION_TOKEN = "ClassRelationLink$<".toCharArray();
+
+    private final int windowBytes;
+    // 属性文字列の組み立てに使う作業領域（スキャナはスレッドごとに用意すること）
+    private final StringBuilder attribute = new StringBuilder();
+
+    public DiagramScanner() {
+        this(WINDOW_BYTES);
+    }
+
+    /**
+     * @param windowBytes 一度にメモリマップするバイト数（UTF-8の1文字が必ず収まるよう4以上）。
+     *                    小さな値はウィンドウの境界をまたぐ文字の扱いを確かめるためのもの
+     */
+    DiagramScanner(int windowBytes) {
+        if (windowBytes < 4) {
+            throw new IllegalArgumentException("windowBytes must be at least 4: " + windowBytes);
+        }
+        this.windowBytes = windowBytes;
+    }
+
+    /**
+     * ファイル全体を読み込み、見つかったクラスと関係を diagram に追加します。
+     */
+    public void scan(Path filePath, UmlDiagram diagram) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            scan(channel, 0, channel.size(), diagram);
+        }
+    }
+
+    /**
+     * ファイルの [start, end) バイトの範囲を読み込み、見つかったクラスと関係を diagram に追加します。
+     * 範囲の境界は行の区切り（または0・ファイル末尾）に合わせること。
+     */
+    public void scan(FileChannel channel, long start, long end, UmlDiagram diagram) throws IOException {
+        if (start >= end) {
+            return;
+        }
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        CharBuffer chars = CharBuffer.allocate(INITIAL_CHAR_BUFFER);
+
+        long position = start;
+        while (position < end) {
+            long windowSize = Math.min(windowBytes, end - position);
+            boolean lastWindow = position + windowSize == end;
+            MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+            while (true) {
+                CoderResult result = decoder.decode(bytes, chars, lastWindow);
+                if (result.isError()) {
+                    result.throwException();
+                }
+                chars = drainLines(chars, false, diagram);
+                if (result.isUnderflow()) {
+                    break;
+                }
+            }
+            // ウィンドウ末尾で途切れたマルチバイト文字は、次のウィンドウの先頭から読み直す
+            position += bytes.position();
+            if (lastWindow) {
+                break;
+            }
+        }
+        CoderResult result = decoder.flush(chars);
+        if (result.isError()) {
+            result.throwException();
+        }
+        drainLines(chars, true, diagram);
+    }
+
+    /**
+     * バッファ内の完結した行をすべて処理し、途中の行だけを先頭に詰めて返す。
+     * 1行がバッファに収まらない場合はバッファを拡張する。
+     */
+    private CharBuffer drainLines(CharBuffer chars, boolean endOfInput, UmlDiagram diagram) {
+        chars.flip();
+        char[] buf = chars.array();
+        int limit = chars.limit();
+        int lineStart = chars.position();
+        for (int i = lineStart; i < limit; i++) {
+            char c = buf[i];
+            if (c == '\n' || c == '\r') {
+                scanLine(buf, lineStart, i, diagram);
+                lineStart = i + 1;
+            }
+        }
+        if (endOfInput && lineStart < limit) {
+            scanLine(buf, lineStart, limit, diagram);
+            lineStart = limit;
+        }
+        chars.position(lineStart);
+        chars.compact();
+        if (!chars.hasRemaining()) {
+            CharBuffer larger = CharBuffer.allocate(chars.capacity() * 2);
+            chars.flip();
+            larger.put(chars);
+            return larger;
+        }
+        return chars;
+    }
+
+    /**
+     * 1行分の文字列 buf[from, to) を解釈する。クラス定義として解釈できなければ関係として解釈を試みる。
+     */
+    void scanLine(char[] buf, int from, int to, UmlDiagram diagram) {
+        if (!scanClass(buf, from, to, diagram)) {
+            scanRelation(buf, from, to, diagram);
+        }
+    }
+
+    /**
+     * {@code <(\d+)>.*?Class\$\((\d+),(\d+)\)!([^!]+)!!(.*);} に相当する解釈。
+     */
+    private boolean scanClass(char[] buf, int from, int to, UmlDiagram diagram) {
+        for (int open = indexOf(buf, '<', from, to); open >= 0; open = indexOf(buf, '<', open + 1, to)) {
+            int idEnd = skipDigits(buf, open + 1, to);
+            if (idEnd == open + 1 || idEnd >= to || buf[idEnd] != '>') {
+                continue;
+            }
+            // ".*?" は行区切り文字をまたげない
+            int lazyLimit = dotLimit(buf, idEnd + 1, to);
+            for (int token = indexOf(buf, CLASS_TOKEN, idEnd + 1, lazyLimit); token >= 0;
+                 token = indexOf(buf, CLASS_TOKEN, token + 1, lazyLimit)) {
+                int p = token + CLASS_TOKEN.length;
+                int xEnd = skipDigits(buf, p, to);
+                if (xEnd == p || xEnd >= to || buf[xEnd] != ',') {
+                    continue;
+                }
+                int yEnd = skipDigits(buf, xEnd + 1, to);
+                if (yEnd == xEnd + 1 || yEnd + 1 >= to || buf[yEnd] != ')' || buf[yEnd + 1] != '!') {
+                    continue;
+                }
+                int nameStart = yEnd + 2;
+                int nameEnd = indexOf(buf, '!', nameStart, to);
+                if (nameEnd <= nameStart || nameEnd + 1 >= to || buf[nameEnd + 1] != '!') {
+                    continue;
+                }
+                int attrsStart = nameEnd + 2;
+                // "(.*);" は行区切り文字の手前にある最後の ';' までを取る
+                int attrsEnd = lastIndexOf(buf, ';', attrsStart, dotLimit(buf, attrsStart, to));
+                if (attrsEnd < 0) {
+                    continue;
+                }
+
+                String id = new String(buf, open + 1, idEnd - open - 1);
+                int x = parseInt(buf, p, xEnd);
+                int y = parseInt(buf, xEnd + 1, yEnd);
+                String name = new String(buf, nameStart, nameEnd - nameStart);
+                UmlClass newClass = new UmlClass(id, name, x, y);
+                addAttributes(buf, attrsStart, attrsEnd, newClass);
+                diagram.addClass(newClass);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@code <(\d+)>.*?ClassRelationLink\$<(\d+)>!<(\d+)>!([^!]+)!!} に相当する解釈。
+     */
+    private boolean scanRelation(char[] buf, int from, int to, UmlDiagram diagram) {
+        for (int open = indexOf(buf, '<', from, to); open >= 0; open = indexOf(buf, '<', open + 1, to)) {
+            int idEnd = skipDigits(buf, open + 1, to);
+            if (idEnd == open + 1 || idEnd >= to || buf[idEnd] != '>') {
+                continue;
+            }
+            int lazyLimit = dotLimit(buf, idEnd + 1, to);
+            for (int token = indexOf(buf, RELATION_TOKEN, idEnd + 1, lazyLimit); token >= 0;
+                 token = indexOf(buf, RELATION_TOKEN, token + 1, lazyLimit)) {
+                int p = token + RELATION_TOKEN.length;
+                int sourceEnd = skipDigits(buf, p, to);
+                if (sourceEnd == p || sourceEnd + 2 >= to
+                        || buf[sourceEnd] != '>' || buf[sourceEnd + 1] != '!' || buf[sourceEnd + 2] != '<') {
+                    continue;
+                }
+                int targetStart = sourceEnd + 3;
+                int targetEnd = skipDigits(buf, targetStart, to);
+                if (targetEnd == targetStart || targetEnd + 1 >= to || buf[targetEnd] != '>' || buf[targetEnd + 1] != '!') {
+                    continue;
+                }
+                int typeStart = targetEnd + 2;
+                int typeEnd = indexOf(buf, '!', typeStart, to);
+                if (typeEnd <= typeStart || typeEnd + 1 >= to || buf[typeEnd + 1] != '!') {
+                    continue;
+                }
+
+                String id = new String(buf, open + 1, idEnd - open - 1);
+                String sourceId = new String(buf, p, sourceEnd - p);
+                String targetId = new String(buf, targetStart, targetEnd - targetStart);
+                String type = new String(buf, typeStart, typeEnd - typeStart);
+                diagram.addRelationship(new UmlRelationship(id, sourceId, targetId, type));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * "-モデルID%-搭載数%!" のような属性部分から '-' と '!' を取り除き、'%' で区切って前後の空白を除いた属性を追加する。
+     */
+    private void addAttributes(char[] buf, int from, int to, UmlClass umlClass) {
+        attribute.setLength(0);
+        for (int i = from; i <= to; i++) {
+            if (i == to || buf[i] == '%') {
+                int start = 0;
+                int end = attribute.length();
+                while (start < end && attribute.charAt(start) <= ' ') {
+                    start++;
+                }
+                while (end > start && attribute.charAt(end - 1) <= ' ') {
+                    end--;
+                }
+                if (start < end) {
+                    umlClass.attributes.add(attribute.substring(start, end));
+                }
+                attribute.setLength(0);
+            } else if (buf[i] != '-' && buf[i] != '!') {
+                attribute.append(buf[i]);
+            }
+        }
+    }
+
+    /**
+     * buf[from, to) の10進数字列を部分文字列を作らずに整数へ変換する。
+     */
+    private static int parseInt(char[] buf, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            int digit = buf[i] - '0';
+            if (value > (Integer.MAX_VALUE - digit) / 10) {
+                throw new NumberFormatException("For input string: \"" + new String(buf, from, to - from) + "\"");
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    private static int skipDigits(char[] buf, int from, int to) {
+        int i = from;
+        while (i < to && buf[i] >= '0' && buf[i] <= '9') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 正規表現の "." がマッチしない文字（行区切り文字）の位置を返す。見つからなければ to。
+     */
+    private static int dotLimit(char[] buf, int from, int to) {
+        for (int i = from; i < to; i++) {
+            char c = buf[i];
+            if (c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    private static int indexOf(char[] buf, char c, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (buf[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int indexOf(char[] buf, char[] token, int from, int to) {
+        outer:
+        for (int i = from; i <= to - token.length; i++) {
+            for (int k = 0; k < token.length; k++) {
+                if (buf[i + k] != token[k]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(char[] buf, char c, int from, int to) {
+        for (int i = to - 1; i >= from; i--) {
+            if (buf[i] == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,346 @@
+package parser;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import model.UmlClass;
+import model.UmlDiagram;
+import model.UmlRelationship;
+
+/**
+ * 読み込み済みのUmlDiagramをバイナリ形式で保存したスナップショット。
+ * テキストを解釈し直さずに、ファイルをメモリマップして必要なクラス・関係だけを取り出せる。
+ *
+ * 形式（整数はすべてビッグエンディアン）:
+ * <pre>
+ *   ヘッダ       : MAGIC, FORMAT_VERSION, 元ファイルのサイズ(long), 元ファイルの更新時刻(long, ナノ秒),
+ *                  文字列数, クラス数, 関係数, 属性参照数
+ *   文字列の位置 : int[文字列数 + 1]（文字列領域の先頭からのバイト位置）
+ *   クラス       : クラスごとに (ID, 名前, x, y, 属性参照の開始位置, 属性数) の6つのint
+ *   属性参照     : int[属性参照数]（属性の文字列番号）
+ *   関係         : 関係ごとに (ID, 始点ID, 終点ID, 種類) の4つのint
+ *   文字列領域   : UTF-8のバイト列
+ * </pre>
+ * ID・名前・属性・関係の種類はすべて文字列表の番号で参照し、同じ文字列は一度だけ格納する。
+ * クラスと関係は {@link UmlDiagram#getClasses()} / {@link UmlDiagram#getRelationships()} の順に並ぶので、
+ * {@link #toDiagram()} は保存したときと同じ順番のダイアグラムを返す。
+ *
+ * 読み取りは位置を指定する操作だけで行うので、1つのインスタンスを複数のスレッドから使ってよい。
+ */
+public class DiagramSnapshot {
+
+    /** 元のファイル名に付けるスナップショットの拡張子 */
+    public static final String FILE_SUFFIX = ".snapshot";
+
+    private static final int MAGIC = 0x43444d53; // "CDMS"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4 * 4;
+    private static final int CLASS_RECORD_INTS = 6;
+    private static final int RELATIONSHIP_RECORD_INTS = 4;
+
+    private final ByteBuffer buffer;
+    private final long sourceSize;
+    private final long sourceLastModified;
+    private final int classCount;
+    private final int relationshipCount;
+    private final int stringOffsetsPosition;
+    private final int classesPosition;
+    private final int attributesPosition;
+    private final int relationshipsPosition;
+    private final int stringsPosition;
+
+    // 取り出した文字列（同じ番号には同じインスタンスを返す。競合しても同じ内容が入るだけなので同期しない）
+    private final String[] decodedStrings;
+
+    private DiagramSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC) {
+            throw new IOException("not a diagram snapshot");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("unsupported snapshot version: " + buffer.getInt(4));
+        }
+        sourceSize = buffer.getLong(8);
+        sourceLastModified = buffer.getLong(16);
+        int stringCount = buffer.getInt(24);
+        classCount = buffer.getInt(28);
+        relationshipCount = buffer.getInt(32);
+        int attributeCount = buffer.getInt(36);
+
+        long position = HEADER_BYTES;
+        stringOffsetsPosition = (int) position;
+        position += 4L * (stringCount + 1L);
+        classesPosition = (int) Math.min(position, Integer.MAX_VALUE);
+        position += 4L * CLASS_RECORD_INTS * classCount;
+        attributesPosition = (int) Math.min(position, Integer.MAX_VALUE);
+        position += 4L * attributeCount;
+        relationshipsPosition = (int) Math.min(position, Integer.MAX_VALUE);
+        position += 4L * RELATIONSHIP_RECORD_INTS * relationshipCount;
+        if (stringCount < 0 || classCount < 0 || relationshipCount < 0 || attributeCount < 0
+                || position > buffer.capacity()
+                || position + buffer.getInt(stringOffsetsPosition + 4 * stringCount) != buffer.capacity()) {
+            throw new IOException("truncated or corrupt snapshot");
+        }
+        stringsPosition = (int) position;
+        decodedStrings = new String[stringCount];
+    }
+
+    /**
+     * 元のテキストファイルに対応するスナップショットのパスを返します（同じディレクトリに置く）。
+     */
+    public static Path pathFor(Path sourceFile) {
+        return sourceFile.resolveSibling(sourceFile.getFileName() + FILE_SUFFIX);
+    }
+
+    /**
+     * スナップショットをメモリマップして開きます。この時点ではヘッダだけを検査し、クラスや文字列は読まない。
+     * @param file スナップショットのファイル
+     * @return 開いたスナップショット
+     * @throws IOException 読み込めない場合、または形式・バージョンが異なる場合
+     */
+    public static DiagramSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("snapshot is too large: " + channel.size() + " bytes");
+            }
+            // マップした領域はチャネルを閉じた後も有効
+            return new DiagramSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * ダイアグラムをスナップショットとして書き出します。一時ファイルに書いてから置き換えるので、
+     * 同じファイルを同時に書いても、読み込む側が書きかけのファイルを見ることはない。
+     * @param diagram 保存するダイアグラム
+     * @param file 書き出すファイル
+     * @param sourceSize 元のテキストファイルのサイズ
+     * @param sourceLastModified 元のテキストファイルの更新時刻（ナノ秒）
+     */
+    public static void write(UmlDiagram diagram, Path file, long sourceSize, long sourceLastModified) throws IOException {
+        StringTable strings = new StringTable();
+        List<UmlClass> classes = new ArrayList<>(diagram.getClasses());
+        List<UmlRelationship> relationships = new ArrayList<>(diagram.getRelationships());
+
+        int[] classRecords = new int[classes.size() * CLASS_RECORD_INTS];
+        IntList attributeRefs = new IntList();
+        for (int i = 0; i < classes.size(); i++) {
+            UmlClass umlClass = classes.get(i);
+            int record = i * CLASS_RECORD_INTS;
+            classRecords[record] = strings.idOf(umlClass.id);
+            classRecords[record + 1] = strings.idOf(umlClass.name);
+            classRecords[record + 2] = umlClass.x;
+            classRecords[record + 3] = umlClass.y;
+            classRecords[record + 4] = attributeRefs.size;
+            classRecords[record + 5] = umlClass.attributes.size();
+            for (String attribute : umlClass.attributes) {
+                attributeRefs.add(strings.idOf(attribute));
+            }
+        }
+        int[] relationshipRecords = new int[relationships.size() * RELATIONSHIP_RECORD_INTS];
+        for (int i = 0; i < relationships.size(); i++) {
+            UmlRelationship relationship = relationships.get(i);
+            int record = i * RELATIONSHIP_RECORD_INTS;
+            relationshipRecords[record] = strings.idOf(relationship.id);
+            relationshipRecords[record + 1] = strings.idOf(relationship.sourceClassId);
+            relationshipRecords[record + 2] = strings.idOf(relationship.targetClassId);
+            relationshipRecords[record + 3] = strings.idOf(relationship.type);
+        }
+
+        long totalBytes = HEADER_BYTES + 4L * (strings.size() + 1L) + 4L * classRecords.length
+            + 4L * attributeRefs.size + 4L * relationshipRecords.length + strings.byteCount;
+        if (totalBytes > Integer.MAX_VALUE) {
+            throw new IOException("diagram is too large for a snapshot: " + totalBytes + " bytes");
+        }
+
+        Path directory = file.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(sourceSize);
+                out.writeLong(sourceLastModified);
+                out.writeInt(strings.size());
+                out.writeInt(classes.size());
+                out.writeInt(relationships.size());
+                out.writeInt(attributeRefs.size);
+                int offset = 0;
+                for (byte[] bytes : strings.encoded) {
+                    out.writeInt(offset);
+                    offset += bytes.length;
+                }
+                out.writeInt(offset);
+                writeInts(out, classRecords, classRecords.length);
+                writeInts(out, attributeRefs.values, attributeRefs.size);
+                writeInts(out, relationshipRecords, relationshipRecords.length);
+                for (byte[] bytes : strings.encoded) {
+                    out.write(bytes);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    /**
+     * 保存したときの元ファイルのサイズ・更新時刻と一致するかを返します。
+     * 一致すればテキストは変わっていないものとみなす。
+     */
+    public boolean isSnapshotOf(long size, long lastModified) {
+        return sourceSize == size && sourceLastModified == lastModified;
+    }
+
+    public int classCount() {
+        return classCount;
+    }
+
+    public int relationshipCount() {
+        return relationshipCount;
+    }
+
+    public String classId(int index) {
+        return string(classField(index, 0));
+    }
+
+    public String className(int index) {
+        return string(classField(index, 1));
+    }
+
+    public int classX(int index) {
+        return classField(index, 2);
+    }
+
+    public int classY(int index) {
+        return classField(index, 3);
+    }
+
+    public int attributeCount(int index) {
+        return classField(index, 5);
+    }
+
+    /**
+     * index 番目のクラスの、i 番目の属性を返します。
+     */
+    public String attribute(int index, int i) {
+        if (i < 0 || i >= attributeCount(index)) {
+            throw new IndexOutOfBoundsException("attribute " + i + " of class " + index);
+        }
+        return string(buffer.getInt(attributesPosition + 4 * (classField(index, 4) + i)));
+    }
+
+    /**
+     * index 番目のクラスだけを読み出し、新しいUmlClassとして返します。
+     */
+    public UmlClass classAt(int index) {
+        UmlClass umlClass = new UmlClass(classId(index), className(index), classX(index), classY(index));
+        int start = attributesPosition + 4 * classField(index, 4);
+        int count = attributeCount(index);
+        for (int i = 0; i < count; i++) {
+            umlClass.attributes.add(string(buffer.getInt(start + 4 * i)));
+        }
+        return umlClass;
+    }
+
+    /**
+     * index 番目の関係だけを読み出し、新しいUmlRelationshipとして返します。
+     */
+    public UmlRelationship relationshipAt(int index) {
+        if (index < 0 || index >= relationshipCount) {
+            throw new IndexOutOfBoundsException("relationship " + index);
+        }
+        int record = relationshipsPosition + 4 * RELATIONSHIP_RECORD_INTS * index;
+        return new UmlRelationship(string(buffer.getInt(record)), string(buffer.getInt(record + 4)),
+            string(buffer.getInt(record + 8)), string(buffer.getInt(record + 12)));
+    }
+
+    /**
+     * すべてのクラスと関係を読み出し、保存したときと同じ順番のUmlDiagramを作ります。
+     */
+    public UmlDiagram toDiagram() {
+        UmlDiagram diagram = new UmlDiagram();
+        for (int i = 0; i < classCount; i++) {
+            diagram.addClass(classAt(i));
+        }
+        for (int i = 0; i < relationshipCount; i++) {
+            diagram.addRelationship(relationshipAt(i));
+        }
+        return diagram;
+    }
+
+    private int classField(int index, int field) {
+        if (index < 0 || index >= classCount) {
+            throw new IndexOutOfBoundsException("class " + index);
+        }
+        return buffer.getInt(classesPosition + 4 * (CLASS_RECORD_INTS * index + field));
+    }
+
+    private String string(int id) {
+        String value = decodedStrings[id];
+        if (value == null) {
+            int start = buffer.getInt(stringOffsetsPosition + 4 * id);
+            int end = buffer.getInt(stringOffsetsPosition + 4 * (id + 1));
+            byte[] bytes = new byte[end - start];
+            buffer.get(stringsPosition + start, bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+            decodedStrings[id] = value;
+        }
+        return value;
+    }
+
+    /**
+     * 書き出し時に使う文字列表。最初に現れた順に番号を振る。
+     */
+    private static final class StringTable {
+        final Map<String, Integer> ids = new HashMap<>();
+        final List<byte[]> encoded = new ArrayList<>();
+        long byteCount = 0;
+
+        int idOf(String value) {
+            Integer id = ids.get(value);
+            if (id == null) {
+                id = encoded.size();
+                ids.put(value, id);
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                encoded.add(bytes);
+                byteCount += bytes.length;
+            }
+            return id;
+        }
+
+        int size() {
+            return encoded.size();
+        }
+    }
+
+    private static final class IntList {
+        int[] values = new int[64];
+        int size = 0;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
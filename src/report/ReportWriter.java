@@ -0,0 +1,392 @@
+package report;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import diff.Conflict;
+import diff.ConflictSink;
+import diff.Diff;
+import diff.DiffSink;
+
+/**
+ * 差分と競合を、受け取った順に1件1行の機械可読な形式（JSON Lines または CSV）で書き出すレポート。
+ *
+ * 1件ごとに行を組み立ててUTF-8に符号化し、固定サイズのバッファにためてからチャネルへ書く。
+ * 結果をためてから書くのではないので、10万クラス規模の差分でも保持するのはバッファ1つ分だけで済む。
+ * ファイル名が .gz で終わる場合は gzip で圧縮する。
+ *
+ * 各行の項目（CSVでは列、JSONではキー。値のない項目はJSONでは省き、CSVでは空にする）:
+ * <pre>
+ *   record      : "diff" または "conflict"
+ *   comparison  : 差分は比較したバージョン名、競合は関係するバージョン名を "/" でつないだもの
+ *   type        : 差分は ADD / DELETE / CHANGE、競合は {@link Conflict.Type} の名前
+ *   element     : CLASS / ATTRIBUTE / RELATIONSHIP
+ *   element_id  : 要素のID（競合は {@link Conflict#elementId}）
+ *   old_value, new_value, attribute, class_name, source, target : 差分の内容（{@link Diff} の同名のフィールド）
+ *   description : 表示用の説明文
+ * </pre>
+ * 競合のJSONには、さらに関係するバージョンごとの変更を {"version", "element_id", "description"} の配列で
+ * changes に入れる。
+ *
+ * 複数のスレッドから同時に使ってはならない。
+ */
+public class ReportWriter implements Closeable {
+
+    /**
+     * レポートの形式。
+     */
+    public enum Format {
+        JSON_LINES, // 1行に1つのJSONオブジェクト
+        CSV;        // 先頭行が見出しのCSV（RFC 4180 の引用符の付け方）
+
+        /**
+         * ファイル名から形式を決める（.gz を除いた名前が .csv で終われば CSV、それ以外は JSON Lines）。
+         */
+        public static Format forFile(Path file) {
+            String name = file.getFileName().toString();
+            if (name.endsWith(".gz")) {
+                name = name.substring(0, name.length() - ".gz".length());
+            }
+            return name.endsWith(".csv") ? CSV : JSON_LINES;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String[] COLUMNS = {
+        "record", "comparison", "type", "element", "element_id", "old_value", "new_value",
+        "attribute", "class_name", "source", "target", "description"
+    };
+
+    private final WritableByteChannel channel;
+    private final Format format;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+        .onMalformedInput(CodingErrorAction.REPLACE)
+        .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final StringBuilder line = new StringBuilder(256);
+    private int field = 0; // 組み立て中の行に書いた項目の数
+    private long recordCount = 0;
+
+    /**
+     * @param channel 書き出し先。{@link #close()} で閉じる
+     * @param format レポートの形式
+     */
+    public ReportWriter(WritableByteChannel channel, Format format) throws IOException {
+        this.channel = channel;
+        this.format = format;
+        if (format == Format.CSV) {
+            for (int i = 0; i < COLUMNS.length; i++) {
+                line.append(i > 0 ? "," : "").append(COLUMNS[i]);
+            }
+            writeLine();
+        }
+    }
+
+    /**
+     * ファイルを作成（既存なら上書き）してレポートを開きます。形式は {@link Format#forFile} で決め、
+     * ファイル名が .gz で終わる場合は gzip で圧縮する。
+     */
+    public static ReportWriter open(Path file) throws IOException {
+        return open(file, Format.forFile(file), file.getFileName().toString().endsWith(".gz"));
+    }
+
+    /**
+     * ファイルを作成（既存なら上書き）してレポートを開きます。
+     * @param file 書き出し先のファイル
+     * @param format レポートの形式
+     * @param gzip gzip で圧縮するかどうか
+     */
+    public static ReportWriter open(Path file, Format format, boolean gzip) throws IOException {
+        FileChannel fileChannel = FileChannel.open(file,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        try {
+            WritableByteChannel channel = gzip ? Channels.newChannel(new FastGzipOutputStream(fileChannel)) : fileChannel;
+            return new ReportWriter(channel, format);
+        } catch (IOException | RuntimeException e) {
+            fileChannel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * 1件の差分を書き出します。
+     * @param comparison 比較したバージョンの名前（"versionA" など）
+     */
+    public void writeDiff(String comparison, Diff diff) throws IOException {
+        startRecord();
+        field("record", "diff");
+        field("comparison", comparison);
+        field("type", diff.changeType.name());
+        field("element", diff.elementType.name());
+        field("element_id", diff.elementId);
+        field("old_value", diff.oldValue);
+        field("new_value", diff.newValue);
+        field("attribute", diff.attribute);
+        field("class_name", diff.className);
+        field("source", diff.sourceName);
+        field("target", diff.targetName);
+        field("description", diff.getDescription());
+        endRecord();
+    }
+
+    /**
+     * 1件の競合を書き出します。
+     * @param versionNames 3者間・2者間マージで比較した2つのバージョンの名前（A, B の順）。
+     *                     N者間マージの競合は自身の {@link Conflict#versionNames} を使う
+     */
+    public void writeConflict(List<String> versionNames, Conflict conflict) throws IOException {
+        List<String> names = conflict.type == Conflict.Type.N_WAY_CONFLICT ? conflict.versionNames : versionNames;
+        startRecord();
+        field("record", "conflict");
+        field("comparison", String.join("/", names));
+        field("type", conflict.type.name());
+        field("element", elementOf(conflict).name());
+        field("element_id", conflict.elementId);
+        for (int i = 5; i < COLUMNS.length - 1; i++) {
+            field(COLUMNS[i], null); // 差分の内容は changes に入れる
+        }
+        field("description", conflict.toString());
+        if (format == Format.JSON_LINES) {
+            line.append(",\"changes\":[");
+            switch (conflict.type) {
+                case CONFLICT:
+                    appendChange(names.get(0), conflict.diffA.elementId, conflict.diffA.getDescription());
+                    line.append(',');
+                    appendChange(names.get(1), conflict.diffB.elementId, conflict.diffB.getDescription());
+                    break;
+                case POTENTIAL_DUPLICATE:
+                    appendChange(names.get(0), conflict.classA.id, "Class '" + conflict.classA.name + "' added.");
+                    line.append(',');
+                    appendChange(names.get(1), conflict.classB.id, "Class '" + conflict.classB.name + "' added.");
+                    break;
+                default:
+                    for (int i = 0; i < conflict.versionDiffs.size(); i++) {
+                        Diff diff = conflict.versionDiffs.get(i);
+                        if (i > 0) {
+                            line.append(',');
+                        }
+                        appendChange(names.get(i), diff.elementId, diff.getDescription());
+                    }
+                    break;
+            }
+            line.append(']');
+        }
+        endRecord();
+    }
+
+    /**
+     * 差分を書き出す出力先を返します。書き込みに失敗すると {@link UncheckedIOException} を投げる。
+     * @param comparison 比較したバージョンの名前
+     */
+    public DiffSink diffSink(String comparison) {
+        return diff -> {
+            try {
+                writeDiff(comparison, diff);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /**
+     * 競合を書き出す出力先を返します。書き込みに失敗すると {@link UncheckedIOException} を投げる。
+     * @param versionNames 比較した2つのバージョンの名前（{@link #writeConflict} を参照）
+     */
+    public ConflictSink conflictSink(List<String> versionNames) {
+        return conflict -> {
+            try {
+                writeConflict(versionNames, conflict);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    /** これまでに書き出した差分と競合の件数（CSVの見出し行は含まない） */
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    /**
+     * バッファに残った内容を書き出してチャネルを閉じます（gzip の場合は圧縮を終える）。
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * 圧縮率より速度を優先する gzip の出力（同じ行の繰り返しが多いので、最速の設定でも十分に縮む）。
+     */
+    private static final class FastGzipOutputStream extends GZIPOutputStream {
+        FastGzipOutputStream(FileChannel fileChannel) throws IOException {
+            super(Channels.newOutputStream(fileChannel), BUFFER_SIZE);
+            def.setLevel(Deflater.BEST_SPEED);
+        }
+    }
+
+    private static Diff.ElementType elementOf(Conflict conflict) {
+        switch (conflict.type) {
+            case CONFLICT:
+                return conflict.diffA.elementType;
+            case POTENTIAL_DUPLICATE:
+                return Diff.ElementType.CLASS;
+            default:
+                return conflict.versionDiffs.get(0).elementType;
+        }
+    }
+
+    private void startRecord() {
+        field = 0;
+        if (format == Format.JSON_LINES) {
+            line.append('{');
+        }
+    }
+
+    private void endRecord() throws IOException {
+        if (format == Format.JSON_LINES) {
+            line.append('}');
+        }
+        writeLine();
+        recordCount++;
+    }
+
+    /**
+     * 項目を1つ追加する。CSVでは列の順番どおりに呼ぶこと（null は空の列）。JSONでは null の項目を省く。
+     */
+    private void field(String name, String value) {
+        if (format == Format.CSV) {
+            if (field++ > 0) {
+                line.append(',');
+            }
+            if (value != null) {
+                appendCsv(value);
+            }
+        } else if (value != null) {
+            if (field++ > 0) {
+                line.append(',');
+            }
+            line.append('"').append(name).append("\":");
+            appendJson(value);
+        }
+    }
+
+    private void appendChange(String version, String elementId, String description) {
+        line.append("{\"version\":");
+        appendJson(version);
+        line.append(",\"element_id\":");
+        appendJson(elementId);
+        line.append(",\"description\":");
+        appendJson(description);
+        line.append('}');
+    }
+
+    private void appendJson(String value) {
+        line.append('"');
+        // エスケープの要らない先頭部分はまとめて追加する（ほとんどの値は全体がそうなる）
+        int plain = 0;
+        while (plain < value.length()) {
+            char c = value.charAt(plain);
+            if (c < 0x20 || c == '"' || c == '\\') {
+                break;
+            }
+            plain++;
+        }
+        line.append(value, 0, plain);
+        for (int i = plain; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    line.append("\\\"");
+                    break;
+                case '\\':
+                    line.append("\\\\");
+                    break;
+                case '\n':
+                    line.append("\\n");
+                    break;
+                case '\r':
+                    line.append("\\r");
+                    break;
+                case '\t':
+                    line.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        line.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        line.append(c);
+                    }
+            }
+        }
+        line.append('"');
+    }
+
+    private void appendCsv(String value) {
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+
+    /**
+     * 組み立てた行に改行を付けてUTF-8でバッファに符号化する。バッファがいっぱいになったらチャネルへ書く。
+     */
+    private void writeLine() throws IOException {
+        line.append('\n');
+        CharBuffer chars = CharBuffer.wrap(line);
+        encoder.reset();
+        while (encoder.encode(chars, buffer, true).isOverflow()) {
+            flushBuffer();
+        }
+        CoderResult result;
+        while ((result = encoder.flush(buffer)).isOverflow()) {
+            flushBuffer();
+        }
+        if (result.isError()) {
+            result.throwException();
+        }
+        line.setLength(0);
+    }
+
+    private void flushBuffer() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,98 @@
+package diff;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import model.UmlClass;
+import model.UmlDiagram;
+import model.UmlRelationship;
+
+/**
+ * 3者間・N者間マージの競合検出で、バージョン側にしかないクラスへの関係を取り違えないことを確かめるテスト。
+ */
+class ConflictDetectorTest {
+
+    private final DiffEngine diffEngine = new DiffEngine();
+    private final ConflictDetector detector = new ConflictDetector();
+
+    @Test
+    void relationshipsToClassesAddedInEachVersionDoNotConflict() {
+        // AとBがそれぞれ無関係なクラスを追加し、どちらにも同じID（C15）が振られている
+        UmlDiagram base = diagram(new UmlClass("X", "顧客", 0, 0));
+        UmlDiagram versionA = diagram(new UmlClass("X", "顧客", 0, 0), new UmlClass("C15", "支払", 10, 0));
+        versionA.addRelationship(new UmlRelationship("R1", "X", "C15", "Association"));
+        UmlDiagram versionB = diagram(new UmlClass("X", "顧客", 0, 0), new UmlClass("C15", "監査ログ", 10, 0));
+        versionB.addRelationship(new UmlRelationship("R7", "X", "C15", "Dependency"));
+
+        List<Diff> diffsA = diffEngine.diff(base, versionA, matchById(base, versionA));
+        List<Diff> diffsB = diffEngine.diff(base, versionB, matchById(base, versionB));
+
+        assertEquals(List.of(), detector.detectConflicts(diffsA, diffsB));
+        assertEquals(0, detector.detectConflictsAcrossVersions(List.of("A", "B"), List.of(diffsA, diffsB),
+            conflict -> { }));
+    }
+
+    @Test
+    void sameRelationshipToClassesAddedInEachVersionIsNotTreatedAsTheSameChange() {
+        // 種類まで同じでも、端点のクラスは別々に追加されたものなので、同じ変更としてまとめない
+        UmlDiagram base = diagram(new UmlClass("X", "顧客", 0, 0));
+        UmlDiagram versionA = diagram(new UmlClass("X", "顧客", 0, 0), new UmlClass("C15", "支払", 10, 0));
+        versionA.addRelationship(new UmlRelationship("R1", "X", "C15", "Association"));
+        UmlDiagram versionB = diagram(new UmlClass("X", "顧客", 0, 0), new UmlClass("C15", "監査ログ", 10, 0));
+        versionB.addRelationship(new UmlRelationship("R7", "X", "C15", "Association"));
+        UmlDiagram versionC = diagram(new UmlClass("X", "顧客", 0, 0), new UmlClass("C15", "配送", 10, 0));
+        versionC.addRelationship(new UmlRelationship("R2", "C15", "X", "Dependency"));
+        versionC.addRelationship(new UmlRelationship("R3", "X", "C15", "Dependency"));
+
+        List<List<Diff>> diffs = new ArrayList<>();
+        for (UmlDiagram version : List.of(versionA, versionB, versionC)) {
+            diffs.add(diffEngine.diff(base, version, matchById(base, version)));
+        }
+
+        assertEquals(0, detector.detectConflictsAcrossVersions(List.of("A", "B", "C"), diffs, conflict -> { }));
+    }
+
+    @Test
+    void relationshipsBetweenBaseClassesStillConflict() {
+        UmlDiagram base = diagram(new UmlClass("X", "顧客", 0, 0), new UmlClass("Y", "注文", 10, 0));
+        UmlDiagram versionA = diagram(new UmlClass("X", "顧客", 0, 0), new UmlClass("Y", "注文", 10, 0));
+        versionA.addRelationship(new UmlRelationship("R1", "X", "Y", "Association"));
+        UmlDiagram versionB = diagram(new UmlClass("X", "顧客", 0, 0), new UmlClass("Y", "注文", 10, 0));
+        versionB.addRelationship(new UmlRelationship("R7", "X", "Y", "Dependency"));
+
+        List<Diff> diffsA = diffEngine.diff(base, versionA, matchById(base, versionA));
+        List<Diff> diffsB = diffEngine.diff(base, versionB, matchById(base, versionB));
+
+        assertEquals(1, detector.detectConflicts(diffsA, diffsB).size());
+        assertEquals(1, detector.detectConflictsAcrossVersions(List.of("A", "B"), List.of(diffsA, diffsB),
+            conflict -> { }));
+    }
+
+    private static UmlDiagram diagram(UmlClass... classes) {
+        UmlDiagram diagram = new UmlDiagram();
+        for (UmlClass umlClass : classes) {
+            diagram.addClass(umlClass);
+        }
+        return diagram;
+    }
+
+    /**
+     * baseのクラスを、同じIDを持つバージョン側のクラスに対応させます（baseにないIDのクラスは対応なし）。
+     */
+    private static Map<UmlClass, UmlClass> matchById(UmlDiagram base, UmlDiagram version) {
+        Map<UmlClass, UmlClass> matches = new HashMap<>();
+        for (UmlClass baseClass : base.getClasses()) {
+            UmlClass versionClass = version.getClassById(baseClass.id);
+            if (versionClass != null) {
+                matches.put(baseClass, versionClass);
+            }
+        }
+        return matches;
+    }
+}
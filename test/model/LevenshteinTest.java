@@ -0,0 +1,135 @@
+package model;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Levenshtein を、書き換える前の素朴な実装（int[][] の全面DP）と突き合わせるテスト。
+ */
+class LevenshteinTest {
+
+    // ASCII・かな・漢字・サロゲートペア（絵文字、𠮷）を混ぜて使う
+    private static final String[] ALPHABETS = {
+        "abcAB_0",
+        "あいうカキ漢字",
+        "a😀𠮷b",
+    };
+
+    /**
+     * 書き換える前の実装。char 単位で全面のDP表を埋める。
+     */
+    private static int reference(String s1, String s2) {
+        int[][] dp = new int[s1.length() + 1][s2.length() + 1];
+        for (int i = 0; i <= s1.length(); i++) {
+            dp[i][0] = i;
+        }
+        for (int j = 0; j <= s2.length(); j++) {
+            dp[0][j] = j;
+        }
+        for (int i = 1; i <= s1.length(); i++) {
+            for (int j = 1; j <= s2.length(); j++) {
+                int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
+                dp[i][j] = Math.min(Math.min(dp[i - 1][j] + 1, dp[i][j - 1] + 1), dp[i - 1][j - 1] + cost);
+            }
+        }
+        return dp[s1.length()][s2.length()];
+    }
+
+    @Test
+    void fixedCases() {
+        String[][] cases = {
+            {"", ""},
+            {"", "abc"},
+            {"kitten", "sitting"},
+            {"Customer", "Costumer"},
+            {"注文明細", "注文詳細"},
+            {"カスタマー", "カスタマ"},
+            {"😀", "😁"},                              // 下位サロゲートだけ違う
+            {"𠮷野家", "吉野家"},                      // サロゲートペアと1文字の置き換え
+            {"a".repeat(64), "a".repeat(63) + "b"},  // Myersで扱える最長
+            {"a".repeat(65), "b" + "a".repeat(64)},  // 帯状DPに切り替わる最短
+            {"ab".repeat(50), "ba".repeat(50)},
+        };
+        for (String[] c : cases) {
+            assertDistance(c[0], c[1]);
+        }
+    }
+
+    @Test
+    void randomShortStrings() {
+        Random random = new Random(42);
+        for (int n = 0; n < 3000; n++) {
+            String s1 = randomString(random, random.nextInt(20));
+            String s2 = mutate(random, s1);
+            assertDistance(s1, s2);
+        }
+    }
+
+    @Test
+    void randomLongStrings() {
+        // 共通の接頭辞・接尾辞を除いても短い方が64文字を超えると、帯状DP（Ukkonen）の経路を通る。
+        // 両端に使わない文字を付けて、接頭辞・接尾辞が取り除かれないようにする
+        Random random = new Random(7);
+        for (int n = 0; n < 300; n++) {
+            String s1 = randomString(random, 65 + random.nextInt(100));
+            String s2 = "#" + mutate(random, s1) + "#";
+            assertDistance(s1, s2);
+        }
+    }
+
+    /**
+     * 上限なし・上限の境界（d-1, d, d+1）・ほかの上限のすべてで、参照実装と一致することを確かめる。
+     */
+    private static void assertDistance(String s1, String s2) {
+        int expected = reference(s1, s2);
+        String message = "\"" + s1 + "\" / \"" + s2 + "\"";
+        assertEquals(expected, Levenshtein.distance(s1, s2), message);
+        assertEquals(expected, Levenshtein.distance(s2, s1), message);
+
+        List<Integer> cutoffs = new ArrayList<>(List.of(0, 1, 2, expected, expected + 1, Integer.MAX_VALUE));
+        if (expected > 0) {
+            cutoffs.add(expected - 1);
+        }
+        for (int cutoff : cutoffs) {
+            // 距離が上限以下ならその値、超えるなら上限 + 1
+            int bounded = expected <= cutoff ? expected : cutoff + 1;
+            assertEquals(bounded, Levenshtein.distance(s1, s2, cutoff), message + " cutoff=" + cutoff);
+            assertEquals(bounded, Levenshtein.distance(s2, s1, cutoff), message + " cutoff=" + cutoff);
+        }
+    }
+
+    private static String randomString(Random random, int length) {
+        int[] alphabet = ALPHABETS[random.nextInt(ALPHABETS.length)].codePoints().toArray();
+        StringBuilder sb = new StringBuilder();
+        while (sb.length() < length) {
+            sb.appendCodePoint(alphabet[random.nextInt(alphabet.length)]);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 文字の置き換え・挿入・削除をいくつか行った文字列を返します（サロゲートペアが分断されることもある）。
+     */
+    private static String mutate(Random random, String s) {
+        StringBuilder sb = new StringBuilder(s);
+        int edits = random.nextInt(Math.max(2, s.length() / 3));
+        for (int e = 0; e < edits; e++) {
+            int op = random.nextInt(3);
+            String insert = randomString(random, 1);
+            if (op == 0 && sb.length() > 0) {
+                int i = random.nextInt(sb.length());
+                sb.replace(i, i + 1, insert);
+            } else if (op == 1 && sb.length() > 0) {
+                sb.deleteCharAt(random.nextInt(sb.length()));
+            } else {
+                sb.insert(random.nextInt(sb.length() + 1), insert);
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,141 @@
+package parser;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import model.UmlClass;
+import model.UmlDiagram;
+import model.UmlRelationship;
+
+/**
+ * 手書きのスキャナ（Mode.STREAMING）が、従来の正規表現による解釈（Mode.REGEX）と同じクラス・関係を
+ * 同じ順番で返すことを確かめるテスト。
+ */
+class DiagramScannerTest {
+
+    private static final DiagramParser REGEX = new DiagramParser(DiagramParser.Mode.REGEX, 1);
+    private static final DiagramParser STREAMING = new DiagramParser(DiagramParser.Mode.STREAMING, 1);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void sampleDiagrams() throws IOException {
+        int parsed = 0;
+        for (String name : List.of("base.txt", "versionA.txt", "versionB.txt")) {
+            Path file = Paths.get("diagrams", name);
+            List<String> expected = describe(REGEX.parse(file));
+            assertEquals(expected, describe(STREAMING.parse(file)), name);
+            parsed += expected.size();
+        }
+        assertTrue(parsed > 0);
+    }
+
+    @Test
+    void edgeInputs() throws IOException {
+        String[] inputs = {
+            "",
+            "\n\r\n\n",
+            // 改行コードの違い（CRLF・CRだけ）
+            "<1>]Class$(10,20)!顧客!!-id%-名前%!;\r\n<2>]Class$(30,40)!注文!!-id%!;\r\n"
+                + "<3>]ClassRelationLink$<2>!<1>!SimpleRelation!!Solid!None!!;\r\n",
+            "<1>]Class$(10,20)!顧客!!-id%!;\r<2>]ClassRelationLink$<1>!<1>!Self!!;\r",
+            // 末尾に改行のないレコード
+            "<1>]Class$(10,20)!顧客!!-id%!;\n<2>]Class$(30,40)!注文!!-id%-数量%!;",
+            "<1>]Class$(10,20)!A!!;\n<2>]ClassRelationLink$<1>!<1>!Self!!",
+            // 正規表現の "." がマッチしない行区切り文字（readAllLines では行が分かれない）
+            "<1>\u0085]Class$(10,20)!A!!-id%!;\n",
+            "<1>\u2028]Class$(10,20)!A!!-id%!;\n<2>]Class$(10,20)!A\u2029B!!-id%!;\n",
+            "<1>]Class$(10,20)!A!!-id%!;\u2028-x%;\n",
+            "<1>]Class$(10,20)!A!!-id%\u2029;\n<2>]Class$(10,20)!B!!-id%!;\u2029\n<3>]Class$(1,2)!C!!-a%\u0085;\n",
+            "<1>]Class$(10,20)!名前\u2028続き!!-id%!;\n",
+            "<1>\u2028]ClassRelationLink$<1>!<2>!T!!;\n<3>]ClassRelationLink$<1>!<2>!T\u0085U!!;\n"
+                + "<4>]ClassRelationLink$<1>!<2>\u2028!T!!;\n",
+            // 属性の区切りと空白、最後の ';' の位置
+            "<1>]Class$(10,20)!A!!-id%!; -x%;\n",
+            "<1>]Class$(10,20)!A!!-id% ;\n",
+            "<1>]Class$(10,20)!名前 続き!!  -id %- %;;\n",
+            // 解釈できない・途中までしか合わない行と、後のものが優先される重複ID
+            "<x>]Class$(1,2)!A!!;\n<1>]Class$(1,2)!!!;\n<1>]Class$(1,2)!A!!\n<1>]Class$(,2)!A!!;\n",
+            "<1><2>]Class$(1,2)!A!!-a%;;\n<3>]Class$(5,6)!B!!-b%-c%!;<4>]Class$(7,8)!C!!;\n",
+            "<1>]Class$(1,2)!旧!!-a%!;\n<1>]Class$(3,4)!新!!-b%!;\n<5>]ClassRelationLink$<1>!<1>!X!!;\n"
+                + "<5>]ClassRelationLink$<1>!<1>!Y!!;\n",
+            "<7>]ClassRelationLink$<1>!<2>!!!;\n<8>]ClassRelationLink$<1>!<2>!T!;\n<9>]Class$(1,2)!A!!- %  %-b c %!;\n",
+            // サロゲートペアを含む名前と属性
+            "<1>]Class$(1,2)!𠮷野家😀!!-𠮷%-😀😁%!;\n",
+        };
+        for (int i = 0; i < inputs.length; i++) {
+            Path file = directory.resolve("edge" + i + ".txt");
+            Files.writeString(file, inputs[i], StandardCharsets.UTF_8);
+            assertEquals(describe(REGEX.parse(file)), describe(STREAMING.parse(file)), "input " + i);
+        }
+    }
+
+    @Test
+    void multibyteCharactersAcrossWindows() throws IOException {
+        // 1〜4バイトの文字を混ぜ、ウィンドウの大きさを変えて文字がウィンドウの境界で途切れるようにする
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            text.append('<').append(i).append(">]Class$(").append(i).append(",").append(i * 2).append(")!")
+                .append("在庫𠮷").append(i).append("é!!-備考%-😀").append(i).append("%!;\n");
+            text.append('<').append(100 + i).append(">]ClassRelationLink$<").append(i).append(">!<")
+                .append((i + 1) % 40).append(">!関連").append(i % 3).append("!!;\r\n");
+        }
+        Path file = directory.resolve("multibyte.txt");
+        Files.writeString(file, text, StandardCharsets.UTF_8);
+        List<String> expected = describe(REGEX.parse(file));
+
+        for (int windowBytes = 4; windowBytes <= 64; windowBytes++) {
+            UmlDiagram diagram = new UmlDiagram();
+            new DiagramScanner(windowBytes).scan(file, diagram);
+            assertEquals(expected, describe(diagram), "windowBytes=" + windowBytes);
+        }
+    }
+
+    @Test
+    void multibyteCharactersAroundChunkBoundaries() throws IOException {
+        // 4MB以上のチャンクが複数できる大きさ（十数MB）にして、チャンクごとに並列に読んだ結果をつなげても同じになることを確かめる
+        Path file = directory.resolve("large.txt");
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < 160_000; i++) {
+                writer.write("<" + i + ">]Class$(" + (i % 1000) + "," + (i / 1000) + ")!注文明細𠮷" + i
+                    + "!!-数量%-単価%-😀" + (i % 7) + "%!;" + (i % 2 == 0 ? "\n" : "\r\n"));
+                if (i % 10 == 0) {
+                    writer.write("<r" + i + ">]ClassRelationLink$<" + i + ">!<" + (i / 2) + ">!関連!!;\n");
+                    writer.write("<" + (1_000_000 + i) + ">]ClassRelationLink$<" + i + ">!<" + (i / 2) + ">!関連!!;\n");
+                }
+            }
+        }
+        DiagramParser chunked = new DiagramParser(DiagramParser.Mode.STREAMING, 4);
+        assertEquals(describe(REGEX.parse(file)), describe(chunked.parse(file)));
+    }
+
+    /**
+     * クラスと関係を、順番どおりに比較できる文字列の並びにします（属性は集合なので並べ替える）。
+     */
+    private static List<String> describe(UmlDiagram diagram) {
+        List<String> lines = new ArrayList<>();
+        for (UmlClass umlClass : diagram.getClasses()) {
+            lines.add("class " + umlClass.id + " " + umlClass.name + " (" + umlClass.x + "," + umlClass.y + ") "
+                + new TreeSet<>(umlClass.attributes));
+        }
+        for (UmlRelationship relationship : diagram.getRelationships()) {
+            lines.add("relationship " + relationship.id + " " + relationship.sourceClassId + " -> "
+                + relationship.targetClassId + " " + relationship.type);
+        }
+        return lines;
+    }
+}